@@ -0,0 +1,118 @@
+package automail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import strategies.IMailPool;
+
+import static automail.ArrivalTraceWriter.*;
+
+/**
+ * Replays the mail arrivals of a trace written by {@link ArrivalTraceWriter}. The file is memory mapped a
+ * region at a time and each record is decoded straight from the mapping as it arrives, so a trace of any
+ * size is replayed without reading it into the heap.
+ */
+public class ArrivalTraceReader implements IMailSource {
+
+    /** The number of records mapped at once, 64MB worth */
+    private static final int RECORDS_PER_REGION = 1 << 22;
+
+    private final Path path;
+    private final IMailPool mailPool;
+    private final SimulationContext context;
+    private final int count;
+    private final int firstMailId;
+
+    /** The region mapped, holding records regionStart onwards, and the next record to arrive */
+    private MappedByteBuffer region;
+    private long regionStart;
+    private int regionRecords;
+    private long next;
+
+    /**
+     * @param path the trace to replay
+     * @param mailPool where mail items go on arrival
+     * @param context the simulation the mail arrives in
+     * @throws IOException if the trace cannot be read or is not a trace
+     */
+    public ArrivalTraceReader(Path path, IMailPool mailPool, SimulationContext context) throws IOException {
+        this.path = path;
+        this.mailPool = mailPool;
+        this.context = context;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.limit() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a mail arrival trace");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + " has unsupported trace version " + header.getInt(4));
+            }
+            count = header.getInt(8);
+            if (channel.size() < HEADER_BYTES + (long) count * RECORD_BYTES) {
+                throw new IOException(path + " is truncated");
+            }
+        }
+        firstMailId = context.reserveMailIds(count);
+        map(0);
+    }
+
+    public int getMailCount() {
+        return count;
+    }
+
+    public int nextArrivalTime() {
+        return next < count ? arrivalTime(next) : Integer.MAX_VALUE;
+    }
+
+    public void step() {
+        int now = context.clock.Time();
+        while (next < count && arrivalTime(next) <= now) {
+            int offset = offset(next);
+            int weight = region.getInt(offset + 12);
+            MailItem mailItem = new MailItem(firstMailId + region.getInt(offset), region.getInt(offset + 8),
+                    region.getInt(offset + 4), weight & ~FRAGILE_BIT, (weight & FRAGILE_BIT) != 0);
+            context.trace.mailArrived(now, mailItem);
+            context.metrics.mailArrived(now, mailItem);
+            mailPool.addToPool(mailItem);
+            next++;
+        }
+    }
+
+    public void skipTo(int time) {
+        while (next < count && arrivalTime(next) < time) {
+            next++;
+        }
+    }
+
+    private int arrivalTime(long record) {
+        int offset = offset(record);
+        return region.getInt(offset + 4);
+    }
+
+    /**
+     * @return the offset of the record in the mapped region, mapping the region holding it first if need be
+     */
+    private int offset(long record) {
+        if (record < regionStart || record >= regionStart + regionRecords) {
+            map(record);
+        }
+        return (int) (record - regionStart) * RECORD_BYTES;
+    }
+
+    private void map(long record) {
+        regionStart = record - record % RECORDS_PER_REGION;
+        regionRecords = (int) Math.min(RECORDS_PER_REGION, count - regionStart);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            region = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + regionStart * RECORD_BYTES, (long) regionRecords * RECORD_BYTES);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes mail arrivals to a binary trace file which {@link ArrivalTraceReader} can replay.
+ *
+ * The file is a 16 byte header, the magic number, format version and record count, followed by one 16 byte
+ * record per item in order of arrival: the item's index among the items of the trace, its arrival time,
+ * destination floor, and weight with the top bit set if it is fragile. Everything is a little-endian int.
+ */
+public class ArrivalTraceWriter implements Closeable {
+
+    static final int MAGIC = 0x52544d41; // "AMTR" read as little-endian bytes
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16;
+    static final int FRAGILE_BIT = 0x80000000;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int count;
+    private int lastArrival;
+
+    /**
+     * @param path the file to write, replacing it if it exists
+     */
+    public ArrivalTraceWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        channel.position(HEADER_BYTES);
+    }
+
+    /**
+     * Appends an arrival, which must not be earlier than the last one written
+     * @param index the item's position among all the items of the trace, in order of creation
+     */
+    public void write(int index, MailItem mailItem) throws IOException {
+        if (mailItem.getArrivalTime() < lastArrival) {
+            throw new IllegalArgumentException("Arrivals must be written in order of arrival time");
+        }
+        if (!buffer.hasRemaining()) flush();
+        lastArrival = mailItem.getArrivalTime();
+        buffer.putInt(index);
+        buffer.putInt(mailItem.getArrivalTime());
+        buffer.putInt(mailItem.getDestFloor());
+        buffer.putInt(mailItem.getWeight() | (mailItem.getFragile() ? FRAGILE_BIT : 0));
+        count++;
+    }
+
+    /**
+     * Writes out the remaining records and the header
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, HEADER_BYTES - buffer.remaining());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,319 @@
+package automail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the full trace without holding up the simulation. Each event is copied as a fixed-size record of
+ * ints into a ring buffer, and a background thread formats the records and writes them to a channel in
+ * large blocks. The simulation thread only waits if it gets a whole ring ahead of the writer.
+ *
+ * Only the thread running the simulation may trace to it.
+ */
+public class AsyncTraceSink implements ITraceSink {
+
+    /** The ints making up each record: type, time, three arguments, then the mail item fields */
+    private static final int FIELDS = 10;
+
+    private static final int SUMMARY = 0;
+    private static final int MESSAGE = 1;
+    private static final int ARRIVED = 2;
+    private static final int RETURNED = 3;
+    private static final int STATE = 4;
+    private static final int DELIVERING = 5;
+    private static final int DELIVERED = 6;
+    private static final int CONFIRMED = 7;
+
+    /** How long the writer sleeps when it has caught up */
+    private static final long IDLE_NANOS = 100_000;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+    private final int mask;
+    private final int[] records;
+    /** The lines of summary and message records, which are not worth encoding */
+    private final String[] lines;
+    /** The next record to be written by the simulation, and the next to be read by the writer */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    /** The simulation's last look at tail, so it only reads the writer's position when the ring seems full */
+    private long tailCache;
+    private volatile boolean closed;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final StringBuilder line = new StringBuilder(128);
+    /** For the rare line that is not all ASCII, such as a summary naming a file */
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Thread writer;
+    private IOException error;
+
+    /**
+     * @param channel where the trace is written
+     * @param records the number of records the ring buffer holds, rounded up to a power of two
+     * @param bufferSize the size in bytes of the blocks written to the channel
+     */
+    public AsyncTraceSink(WritableByteChannel channel, int records, int bufferSize) {
+        int capacity = Integer.highestOneBit(Math.max(records - 1, 1)) << 1;
+        this.mask = capacity - 1;
+        this.records = new int[capacity * FIELDS];
+        this.lines = new String[capacity];
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.writer = new Thread(this::write, "trace-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public AsyncTraceSink(WritableByteChannel channel) {
+        this(channel, 1 << 16, 1 << 16);
+    }
+
+    public void summary(String line) {
+        int slot = claim();
+        records[slot * FIELDS] = SUMMARY;
+        lines[slot] = line;
+        publish();
+    }
+
+    public void message(String line) {
+        int slot = claim();
+        records[slot * FIELDS] = MESSAGE;
+        lines[slot] = line;
+        publish();
+    }
+
+    public void mailArrived(int time, MailItem mailItem) {
+        record(ARRIVED, time, 0, 0, 0, mailItem);
+    }
+
+    public void mailReturned(int time, MailItem mailItem) {
+        record(RETURNED, time, 0, 0, 0, mailItem);
+    }
+
+    public void stateChanged(int time, int robot, int tube, Robot.RobotState from, Robot.RobotState to) {
+        int slot = claim();
+        int i = slot * FIELDS;
+        records[i] = STATE;
+        records[i + 1] = time;
+        records[i + 2] = robot;
+        records[i + 3] = tube;
+        records[i + 4] = from.ordinal() | to.ordinal() << 8;
+        publish();
+    }
+
+    public void robotDelivering(int time, int robot, int tube, MailItem mailItem) {
+        record(DELIVERING, time, robot, tube, 0, mailItem);
+    }
+
+    public void robotDelivered(int time, int robot, int tube, int mailItem) {
+        int slot = claim();
+        int i = slot * FIELDS;
+        records[i] = DELIVERED;
+        records[i + 1] = time;
+        records[i + 2] = robot;
+        records[i + 3] = tube;
+        records[i + 4] = mailItem;
+        publish();
+    }
+
+    public void mailDelivered(int time, int count, MailItem mailItem) {
+        record(CONFIRMED, time, count, 0, 0, mailItem);
+    }
+
+    /**
+     * Waits for the writer to write out everything traced so far and stops it
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            error.printStackTrace();
+        }
+    }
+
+    private void record(int type, int time, int a, int b, int c, MailItem mailItem) {
+        int slot = claim();
+        int i = slot * FIELDS;
+        records[i] = type;
+        records[i + 1] = time;
+        records[i + 2] = a;
+        records[i + 3] = b;
+        records[i + 4] = c;
+        records[i + 5] = mailItem.getId();
+        records[i + 6] = mailItem.getArrivalTime();
+        records[i + 7] = mailItem.getDestFloor();
+        records[i + 8] = mailItem.getWeight();
+        records[i + 9] = mailItem.getFragile() ? 1 : 0;
+        publish();
+    }
+
+    /**
+     * @return the slot for the next record, once the writer has made room for it
+     */
+    private int claim() {
+        long next = head.get();
+        if (next - tailCache > mask) {
+            while (next - (tailCache = tail.get()) > mask) {
+                Thread.yield();
+            }
+        }
+        return (int) (next & mask);
+    }
+
+    private void publish() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * The writer thread: formats records as they are published, until closed and drained
+     */
+    private void write() {
+        long next = tail.get();
+        while (true) {
+            long end = head.get();
+            if (next == end) {
+                flush();
+                if (closed && next == head.get()) break;
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            for (; next < end; next++) {
+                format((int) (next & mask));
+                tail.lazySet(next + 1);
+            }
+        }
+    }
+
+    private void format(int slot) {
+        int i = slot * FIELDS;
+        int type = records[i];
+        line.setLength(0);
+        if (type == SUMMARY || type == MESSAGE) {
+            line.append(lines[slot]);
+            lines[slot] = null;
+        } else {
+            line.append("T: ");
+            pad(records[i + 1], 3);
+            line.append(" > ");
+            switch (type) {
+                case ARRIVED:
+                    line.append("+ addToPool [");
+                    appendItem(i);
+                    line.append(']');
+                    break;
+                case RETURNED:
+                    line.append(" +addToPool [");
+                    appendItem(i);
+                    line.append(']');
+                    break;
+                case STATE:
+                    appendRobot(records[i + 2], records[i + 3], 7);
+                    line.append(" changed from ").append(STATES[records[i + 4] & 0xff])
+                            .append(" to ").append(STATES[records[i + 4] >> 8]);
+                    break;
+                case DELIVERING:
+                    appendRobot(records[i + 2], records[i + 3], 9);
+                    line.append("-> [");
+                    appendItem(i);
+                    line.append(']');
+                    break;
+                case DELIVERED:
+                    appendRobot(records[i + 2], records[i + 3], 9);
+                    line.append("-> Deliver item ").append(records[i + 4]);
+                    break;
+                case CONFIRMED:
+                    line.append("Deliv(");
+                    pad(records[i + 2], 4);
+                    line.append(") [");
+                    appendItem(i);
+                    line.append(']');
+                    break;
+            }
+        }
+        line.append(NEWLINE);
+        encode();
+    }
+
+    /** As MailItem.toString() */
+    private void appendItem(int i) {
+        line.append("Mail Item:: ID: ");
+        pad(records[i + 5], 6);
+        line.append(" | Arrival: ");
+        pad(records[i + 6], 4);
+        line.append(" | Destination: ");
+        pad(records[i + 7], 2);
+        line.append(" | Weight: ");
+        pad(records[i + 8], 4);
+        line.append(records[i + 9] == 1 ? " | fragile" : " |  normal");
+    }
+
+    /** The robot id and tube count right aligned in the given width, as R0(1) */
+    private void appendRobot(int robot, int tube, int width) {
+        int length = 3 + digits(robot) + digits(tube);
+        for (int k = length; k < width; k++) line.append(' ');
+        line.append('R').append(robot).append('(').append(tube).append(')');
+    }
+
+    /** Appends a non-negative number right aligned in the given width */
+    private void pad(int value, int width) {
+        for (int k = digits(value); k < width; k++) line.append(' ');
+        line.append(value);
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /** Copies the line into the buffer as UTF-8, writing the buffer out whenever it fills */
+    private void encode() {
+        for (int k = 0; k < line.length(); k++) {
+            char c = line.charAt(k);
+            if (c >= 0x80) {
+                encodeUtf8(k);
+                return;
+            }
+            if (!buffer.hasRemaining()) flush();
+            buffer.put((byte) c);
+        }
+    }
+
+    /** Encodes the rest of the line, from its first character outside ASCII, through the encoder */
+    private void encodeUtf8(int from) {
+        CharBuffer chars = CharBuffer.wrap(line, from, line.length());
+        utf8.reset();
+        while (utf8.encode(chars, buffer, true).isOverflow()) flush();
+        while (utf8.flush(buffer).isOverflow()) flush();
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,158 @@
+package automail;
+
+import exceptions.BreakingFragileItemException;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the simulation once for each of a range of seeds, several at a time in one JVM, and reports
+ * statistics of the final score and final delivery time across the runs.
+ *
+ * Usage: BatchRunner runs [first seed] [threads]
+ * The first seed defaults to the Seed property (or 0) and the threads to the number of processors.
+ */
+public class BatchRunner {
+
+    /** z value for a 95% confidence interval */
+    private static final double Z_95 = 1.96;
+
+    /** The outcome of a single run */
+    public static class Result {
+        public final int seed;
+        public final double score;
+        public final int time;
+        /** Why the run could not complete, or null if it did */
+        public final Throwable failure;
+
+        Result(int seed, double score, int time, Throwable failure) {
+            this.seed = seed;
+            this.score = score;
+            this.time = time;
+            this.failure = failure;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: BatchRunner runs [first seed] [threads]");
+            return;
+        }
+        Properties automailProperties = Simulation.loadProperties();
+        int runs = Integer.parseInt(args[0]);
+        int firstSeed = args.length > 1 ? Integer.parseInt(args[1])
+                : Integer.parseInt(automailProperties.getProperty("Seed", "0"));
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<Result> results = run(automailProperties, firstSeed, runs, threads);
+        System.out.printf("Runs: %d (seeds %d to %d) on %d threads%n", runs, firstSeed, firstSeed + runs - 1, threads);
+        printSummary(results, System.out);
+    }
+
+    /**
+     * Runs the simulation for seeds firstSeed to firstSeed + runs - 1 on a fork-join pool
+     * @param automailProperties the configuration shared by every run, any Seed is overridden
+     * @param threads the number of simulations to run at once
+     * @return the result of each run, in seed order
+     */
+    public static List<Result> run(Properties automailProperties, int firstSeed, int runs, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>(runs);
+            for (int i = 0; i < runs; i++) {
+                final int seed = firstSeed + i;
+                tasks.add(pool.submit(() -> runOne(automailProperties, seed, Integer.MAX_VALUE)));
+            }
+            List<Result> results = new ArrayList<>(runs);
+            for (ForkJoinTask<Result> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the simulation once, without tracing, giving up if it has not completed by maxTime
+     * @param automailProperties the configuration of the run, any Seed is overridden
+     * @return the outcome of the run, failed if it could not complete or ran out of time
+     */
+    static Result runOne(Properties automailProperties, int seed, int maxTime) {
+        Properties properties = new Properties();
+        properties.putAll(automailProperties);
+        properties.setProperty("Seed", Integer.toString(seed));
+        try {
+            Simulation simulation = new Simulation(properties, new PrintTraceSink(ITraceSink.Level.OFF, System.out));
+            try {
+                simulation.start();
+                while (!simulation.isComplete()) {
+                    if (simulation.getTime() >= maxTime) {
+                        return new Result(seed, 0, 0, new IllegalStateException("Still running at T: " + maxTime));
+                    }
+                    simulation.step();
+                }
+            } finally {
+                simulation.close();
+            }
+            return new Result(seed, simulation.getTotalScore(), simulation.getTime(), null);
+        } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
+            return new Result(seed, 0, 0, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create mail pool", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void printSummary(List<Result> results, PrintStream out) {
+        List<Result> completed = new ArrayList<>();
+        for (Result result : results) {
+            if (result.failure == null) {
+                completed.add(result);
+            } else {
+                out.printf("Seed %d unable to complete: %s%n", result.seed, result.failure.getMessage());
+            }
+        }
+        if (completed.isEmpty()) return;
+        double[] scores = new double[completed.size()];
+        double[] times = new double[completed.size()];
+        for (int i = 0; i < completed.size(); i++) {
+            scores[i] = completed.get(i).score;
+            times[i] = completed.get(i).time;
+        }
+        printStatistics("Final Score", scores, out);
+        printStatistics("Final Delivery time", times, out);
+    }
+
+    private static void printStatistics(String name, double[] values, PrintStream out) {
+        int n = values.length;
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double mean = 0;
+        for (double value : values) mean += value;
+        mean /= n;
+        double variance = 0;
+        for (double value : values) variance += (value - mean) * (value - mean);
+        double stddev = n > 1 ? Math.sqrt(variance / (n - 1)) : 0;
+        double halfWidth = Z_95 * stddev / Math.sqrt(n);
+        out.printf("%s: mean %.2f, stddev %.2f, 95%% CI [%.2f, %.2f]%n", name, mean, stddev, mean - halfWidth, mean + halfWidth);
+        out.printf("%s: min %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n", name,
+                sorted[0], percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[n - 1]);
+    }
+
+    /** Nearest-rank percentile of sorted values */
+    private static double percentile(double[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
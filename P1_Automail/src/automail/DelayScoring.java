@@ -0,0 +1,58 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * The original scoring, which penalises a delivery by its delay to the power of 1.2. Delays are whole time
+ * steps, so the score of each is worked out once with Math.pow and kept in a table, giving exactly the same
+ * scores as calling Math.pow every time. The table grows as longer delays turn up, up to MAX_TABLED, beyond
+ * which scores are worked out as they are needed.
+ */
+public class DelayScoring implements IScoringFunction {
+
+    /** Penalty for longer delivery times */
+    public static final double PENALTY = 1.2;
+
+    private static final int INITIAL_TABLE = 1024;
+    private static final int MAX_TABLED = 1 << 20;
+
+    private final double penalty;
+    /** Multiplies every score, from the weight given to the priority of mail, of which there is none */
+    private final double priorityFactor;
+    private double[] table = new double[0];
+
+    public DelayScoring() {
+        this(PENALTY, 0);
+    }
+
+    /**
+     * @param penalty the power to raise each delay to
+     * @param priorityWeight the weight of mail priority, scaling every score by one plus its square root
+     */
+    public DelayScoring(double penalty, double priorityWeight) {
+        this.penalty = penalty;
+        this.priorityFactor = 1 + Math.sqrt(priorityWeight);
+        fillTable(INITIAL_TABLE);
+    }
+
+    @Override
+    public double score(int delay, MailItem mailItem) {
+        if (delay >= table.length) {
+            if (delay >= MAX_TABLED) return compute(delay);
+            fillTable(Math.min(MAX_TABLED, Math.max(delay + 1, table.length * 2)));
+        }
+        return table[delay];
+    }
+
+    private void fillTable(int length) {
+        int from = table.length;
+        table = Arrays.copyOf(table, length);
+        for (int delay = from; delay < length; delay++) {
+            table[delay] = compute(delay);
+        }
+    }
+
+    private double compute(int delay) {
+        return Math.pow(delay, penalty) * priorityFactor;
+    }
+}
@@ -0,0 +1,237 @@
+package automail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes what happens in a simulation to subscribers on another thread, so that dashboards and the like can
+ * follow a run without slowing it down. Every measurement made through {@link IMetricsSink} is copied into the
+ * next slot of a fixed ring of events, and a dispatcher thread hands the subscribers everything published since
+ * it last looked, up to a batch at a time. The ring is bounded: a simulation getting a whole ring ahead of the
+ * slowest subscriber waits for it to catch up, and these stalls are counted. A subscriber throwing anything
+ * stops the dispatcher, and the simulation fails the next time it has to wait for it, rather than waiting forever.
+ *
+ * Measurements are passed straight on to another sink as well, on the simulation's thread, so the bus can sit
+ * in front of a {@link MetricsRecorder}. Only the thread running the simulation may publish to it.
+ */
+public class EventBus implements IMetricsSink {
+
+    /** How long the dispatcher sleeps when it has caught up */
+    private static final long IDLE_NANOS = 100_000;
+
+    private final IMetricsSink next;
+    private final IEventSubscriber[] subscribers;
+    private final int batch;
+
+    private final int mask;
+    private final SimulationEvent[] events;
+    /** The ring as a list, for handing out batches */
+    private final List<SimulationEvent> ring;
+    /** The next event to be published by the simulation, and the next to be handed out by the dispatcher */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    /** The simulation's last look at tail, so it only reads the dispatcher's position when the ring seems full */
+    private long tailCache;
+    private volatile boolean closed;
+    private final Thread dispatcher;
+
+    private long stalls;
+    /** Written by the dispatcher, read once it has stopped */
+    private long batches;
+    /** What a subscriber threw, after which the dispatcher has stopped */
+    private volatile Throwable error;
+
+    /**
+     * @param subscribers who the events are handed to, each batch to every one in turn
+     * @param capacity the number of events the ring holds, rounded up to a power of two
+     * @param batch the most events handed to a subscriber at once
+     * @param next where measurements are passed on to on the simulation's thread
+     */
+    public EventBus(IEventSubscriber[] subscribers, int capacity, int batch, IMetricsSink next) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.events = new SimulationEvent[size];
+        for (int i = 0; i < size; i++) {
+            events[i] = new SimulationEvent();
+        }
+        this.ring = Collections.unmodifiableList(Arrays.asList(events));
+        this.subscribers = subscribers.clone();
+        this.batch = Math.max(batch, 1);
+        this.next = next;
+        this.dispatcher = new Thread(this::dispatch, "event-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public void mailArrived(int time, MailItem mailItem) {
+        next.mailArrived(time, mailItem);
+        SimulationEvent event = claim(SimulationEvent.Type.MAIL_ARRIVED, time);
+        event.setMail(mailItem);
+        publish();
+    }
+
+    @Override
+    public void mailDelivered(int time, MailItem mailItem) {
+        next.mailDelivered(time, mailItem);
+        SimulationEvent event = claim(SimulationEvent.Type.MAIL_DELIVERED, time);
+        event.setMail(mailItem);
+        publish();
+    }
+
+    @Override
+    public void robotStateChanged(int time, int robot, Robot.RobotState from, Robot.RobotState to) {
+        next.robotStateChanged(time, robot, from, to);
+        SimulationEvent event = claim(SimulationEvent.Type.STATE_CHANGED, time);
+        event.setRobot(robot);
+        event.setStates(from, to);
+        publish();
+    }
+
+    @Override
+    public void mailWrapped(int time, int robot, MailItem mailItem) {
+        next.mailWrapped(time, robot, mailItem);
+        SimulationEvent event = claim(SimulationEvent.Type.MAIL_WRAPPED, time);
+        event.setRobot(robot);
+        event.setMail(mailItem);
+        publish();
+    }
+
+    @Override
+    public void mailUnwrapped(int time, int robot, MailItem mailItem) {
+        next.mailUnwrapped(time, robot, mailItem);
+        SimulationEvent event = claim(SimulationEvent.Type.MAIL_UNWRAPPED, time);
+        event.setRobot(robot);
+        event.setMail(mailItem);
+        publish();
+    }
+
+    @Override
+    public void stationWrapped(int time, MailItem mailItem) {
+        next.stationWrapped(time, mailItem);
+        SimulationEvent event = claim(SimulationEvent.Type.STATION_WRAPPED, time);
+        event.setMail(mailItem);
+        publish();
+    }
+
+    @Override
+    public void robotBlocked(int time, int robot) {
+        next.robotBlocked(time, robot);
+        SimulationEvent event = claim(SimulationEvent.Type.ROBOT_BLOCKED, time);
+        event.setRobot(robot);
+        publish();
+    }
+
+    @Override
+    public void poolChanged(int time, int depth) {
+        next.poolChanged(time, depth);
+        SimulationEvent event = claim(SimulationEvent.Type.POOL_CHANGED, time);
+        event.setDepth(depth);
+        publish();
+    }
+
+    @Override
+    public void wrappingQueueChanged(int time, int depth) {
+        next.wrappingQueueChanged(time, depth);
+        SimulationEvent event = claim(SimulationEvent.Type.WRAPPING_QUEUE_CHANGED, time);
+        event.setDepth(depth);
+        publish();
+    }
+
+    /**
+     * Waits for the dispatcher to hand out everything published so far and stops it. Nothing may be published
+     * afterwards.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            error.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the bus, then lets each subscriber add to the results, followed by how the bus kept up
+     */
+    public void report(ITraceSink trace) {
+        close();
+        for (IEventSubscriber subscriber : subscribers) {
+            subscriber.finish(trace);
+        }
+        trace.summary(String.format("Events: %d published in %d batches, simulation held up %d times",
+                head.get(), batches, stalls));
+    }
+
+    /**
+     * @return the number of times the simulation waited for the subscribers to make room in the ring
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return the slot for the next event, once the dispatcher has made room for it, with its type and time set
+     */
+    private SimulationEvent claim(SimulationEvent.Type type, int time) {
+        long position = head.get();
+        if (position - tailCache > mask) {
+            if (position - (tailCache = tail.get()) > mask) {
+                stalls++;
+                while (position - (tailCache = tail.get()) > mask) {
+                    if (!dispatcher.isAlive()) {
+                        throw new IllegalStateException("The event dispatcher has stopped", error);
+                    }
+                    Thread.yield();
+                }
+            }
+        }
+        SimulationEvent event = events[(int) (position & mask)];
+        event.set(type, time);
+        return event;
+    }
+
+    private void publish() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * The dispatcher thread: hands out events in batches as they are published, until closed and drained, or
+     * until a subscriber fails. A batch stops at the end of the ring so that it is always one run of slots.
+     */
+    private void dispatch() {
+        long position = tail.get();
+        while (true) {
+            long end = head.get();
+            if (position == end) {
+                if (closed && position == head.get()) break;
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            while (position < end) {
+                int from = (int) (position & mask);
+                int count = (int) Math.min(Math.min(end - position, batch), events.length - from);
+                List<SimulationEvent> slice = ring.subList(from, from + count);
+                for (IEventSubscriber subscriber : subscribers) {
+                    try {
+                        subscriber.onEvents(slice);
+                    } catch (Throwable e) {
+                        error = e;
+                        return;
+                    }
+                }
+                batches++;
+                position += count;
+                tail.lazySet(position);
+            }
+        }
+    }
+}
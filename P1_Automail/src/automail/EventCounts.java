@@ -0,0 +1,42 @@
+package automail;
+
+import java.util.List;
+
+/**
+ * Counts the events of each type a simulation publishes, as an example of an {@link IEventSubscriber} and to
+ * check a run's events against its results: Event_Subscribers=automail.EventCounts
+ */
+public class EventCounts implements IEventSubscriber {
+
+    private static final SimulationEvent.Type[] TYPES = SimulationEvent.Type.values();
+
+    private final long[] counts = new long[TYPES.length];
+    private long batches;
+    private int largestBatch;
+
+    @Override
+    public void onEvents(List<SimulationEvent> events) {
+        for (SimulationEvent event : events) {
+            counts[event.getType().ordinal()]++;
+        }
+        batches++;
+        largestBatch = Math.max(largestBatch, events.size());
+    }
+
+    @Override
+    public void finish(ITraceSink trace) {
+        StringBuilder line = new StringBuilder("Event counts:");
+        for (SimulationEvent.Type type : TYPES) {
+            line.append(' ').append(type.name().toLowerCase()).append('=').append(counts[type.ordinal()]);
+        }
+        trace.summary(line.toString());
+        trace.summary("Event batches: " + batches + ", largest " + largestBatch);
+    }
+
+    /**
+     * @return the number of events of the type received so far
+     */
+    public long getCount(SimulationEvent.Type type) {
+        return counts[type.ordinal()];
+    }
+}
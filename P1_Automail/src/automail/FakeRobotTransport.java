@@ -0,0 +1,64 @@
+package automail;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A robot transport with no robots behind it, for running real-time mode without hardware. Every command is
+ * acknowledged after a fixed delay standing in for the round trip to a robot, and the last command each
+ * robot was sent is kept for checking.
+ */
+public class FakeRobotTransport implements IRobotTransport {
+
+    /** The round trip to a robot over a wireless link, give or take */
+    private static final long DEFAULT_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private final long latencyNanos;
+    private final AtomicLong exchanges = new AtomicLong();
+    private final ConcurrentHashMap<Integer, RobotCommand> lastCommands = new ConcurrentHashMap<>();
+
+    public FakeRobotTransport() {
+        this(DEFAULT_LATENCY_NANOS);
+    }
+
+    /**
+     * @param latencyNanos how long each exchange takes
+     */
+    public FakeRobotTransport(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public boolean exchange(RobotCommand command) {
+        if (latencyNanos > 0) {
+            // Parking rather than sleeping lets a virtual thread give up its carrier while it waits
+            long until = System.nanoTime() + latencyNanos;
+            for (long left = latencyNanos; left > 0; left = until - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+        }
+        lastCommands.put(command.robot, command);
+        exchanges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the number of commands acknowledged so far
+     */
+    public long getExchanges() {
+        return exchanges.get();
+    }
+
+    /**
+     * @return the last command the robot was sent, or null if it has been sent none
+     */
+    public RobotCommand getLastCommand(int robot) {
+        return lastCommands.get(robot);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,65 @@
+package automail;
+
+/**
+ * Hands out the int handles of a store which keeps its items in arrays, reusing the handles of released items,
+ * so a store only grows to the most items it has held at once. The subclass keeps the arrays, and makes them
+ * longer when there is no room for another handle.
+ */
+public abstract class HandleStore {
+
+    /** Handles below this have been handed out, and those in free[0..freeCount) have since been released */
+    private int allocated;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    /**
+     * @return a handle for a new item, a released one if there is any
+     */
+    protected int newHandle() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (allocated == capacity()) grow(capacity() * 2);
+        return allocated++;
+    }
+
+    /**
+     * Hands out a block of consecutive new handles at once, for the caller to fill in in any order
+     * @return the first of count handles
+     */
+    public int allocate(int count) {
+        while (allocated + count > capacity()) grow(capacity() * 2);
+        int first = allocated;
+        allocated += count;
+        return first;
+    }
+
+    /**
+     * Frees the handle for reuse, after which it must not be used again
+     */
+    public void release(int handle) {
+        if (freeCount == free.length) {
+            int[] newFree = new int[free.length * 2];
+            System.arraycopy(free, 0, newFree, 0, freeCount);
+            free = newFree;
+        }
+        free[freeCount++] = handle;
+    }
+
+    /**
+     * @return the number of items held
+     */
+    public int size() {
+        return allocated - freeCount;
+    }
+
+    /**
+     * @return the number of handles the arrays have room for, at least 1
+     */
+    protected abstract int capacity();
+
+    /**
+     * Makes the arrays long enough for the given number of handles, keeping what they hold
+     */
+    protected abstract void grow(int capacity);
+}
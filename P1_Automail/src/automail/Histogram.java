@@ -0,0 +1,97 @@
+package automail;
+
+/**
+ * A histogram of non-negative whole numbers in the style of an HDR histogram: values below 256 are counted
+ * exactly, and larger ones in buckets no wider than 1/128 of their value, so any value read back is within
+ * 1% of what was recorded. All the buckets are allocated up front, so recording never allocates.
+ */
+public class Histogram {
+
+    /** Bits of each value kept exactly, after its leading bit */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for every positive long */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    /** The sum of the values recorded, for the mean */
+    private double total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Records a value as if it had been recorded count times over
+     */
+    public void record(long value, long count) {
+        if (value < 0) throw new IllegalArgumentException("Negative value " + value);
+        if (count <= 0) return;
+        counts[index(value)] += count;
+        totalCount += count;
+        total += (double) value * count;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest value recorded, or 0 if none has been
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : total / totalCount;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the value which that percentage of the recorded values are at or below, to the precision of
+     * the buckets, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestInBucket(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Values below 2 * SUB_BUCKETS are their own bucket. Above that, each doubling of the value is split
+     * into SUB_BUCKETS buckets, by the bits after the leading one.
+     */
+    private static int index(long value) {
+        int leading = 63 - Long.numberOfLeadingZeros(value);
+        if (leading <= SUB_BUCKET_BITS) return (int) value;
+        int shift = leading - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long lowestInBucket(int index) {
+        int block = index >> SUB_BUCKET_BITS;
+        if (block <= 1) return index;
+        return (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << (block - 1);
+    }
+
+    private static long highestInBucket(int index) {
+        int block = index >> SUB_BUCKET_BITS;
+        if (block <= 1) return index;
+        return lowestInBucket(index) + (1L << (block - 1)) - 1;
+    }
+}
@@ -0,0 +1,23 @@
+package automail;
+
+import java.util.List;
+
+/**
+ * Consumes the events of a simulation off its thread, in batches, from an {@link EventBus}. Chosen by class
+ * name with the Event_Subscribers property, so implementations need a constructor taking no arguments.
+ */
+public interface IEventSubscriber {
+
+    /**
+     * Called on the bus's own thread with the events published since the last call, in the order they
+     * happened. The events are only valid until this returns, and the simulation may be held up while it runs.
+     * @param events at most Event_Batch events, never empty
+     */
+    void onEvents(List<SimulationEvent> events);
+
+    /**
+     * Called on the simulation's thread once every event has been passed on, to add to the results
+     */
+    default void finish(ITraceSink trace) {
+    }
+}
@@ -0,0 +1,28 @@
+package automail;
+
+/**
+ * Where the mail of a simulation comes from: it puts each item into the mail pool at the time step the item arrives
+ */
+public interface IMailSource {
+
+    /**
+     * @return the total number of mail items which will arrive
+     */
+    int getMailCount();
+
+    /**
+     * @return the earliest time, no earlier than now, at which mail arrives, or Integer.MAX_VALUE if no more mail will arrive
+     */
+    int nextArrivalTime();
+
+    /**
+     * Adds the mail arriving at the current time step to the mail pool
+     */
+    void step();
+
+    /**
+     * Passes over the mail arriving before the given time without adding it to the pool, so a run restored
+     * from a snapshot carries on from there
+     */
+    void skipTo(int time);
+}
@@ -0,0 +1,70 @@
+package automail;
+
+/**
+ * Receives measurements from the hot paths of a simulation: robot state changes, the size of the mail pool,
+ * arrivals and deliveries, wrapping by robots and by the wrapping station, and robots held up by fragile deliveries. Calls
+ * are made on the simulation's own thread, every one of them, so implementations must be cheap and must not
+ * allocate.
+ */
+public interface IMetricsSink {
+
+    /** Measures nothing */
+    IMetricsSink NONE = new IMetricsSink() {
+        public void robotStateChanged(int time, int robot, Robot.RobotState from, Robot.RobotState to) {}
+        public void poolChanged(int time, int depth) {}
+        public void mailArrived(int time, MailItem mailItem) {}
+        public void mailDelivered(int time, MailItem mailItem) {}
+        public void mailWrapped(int time, int robot, MailItem mailItem) {}
+        public void mailUnwrapped(int time, int robot, MailItem mailItem) {}
+        public void robotBlocked(int time, int robot) {}
+        public void stationWrapped(int time, MailItem mailItem) {}
+        public void wrappingQueueChanged(int time, int depth) {}
+    };
+
+    /**
+     * @param robot the id of the robot
+     */
+    void robotStateChanged(int time, int robot, Robot.RobotState from, Robot.RobotState to);
+
+    /**
+     * Mail has been added to the pool or the pool has loaded the waiting robots
+     * @param depth the number of items now waiting in the pool
+     */
+    void poolChanged(int time, int depth);
+
+    /**
+     * Mail has arrived, just before it is added to the pool
+     */
+    void mailArrived(int time, MailItem mailItem);
+
+    /**
+     * A delivery has been confirmed, its latency being the time since the item arrived
+     */
+    void mailDelivered(int time, MailItem mailItem);
+
+    /**
+     * A robot has spent a time step wrapping a fragile item
+     */
+    void mailWrapped(int time, int robot, MailItem mailItem);
+
+    /**
+     * A robot has spent a time step unwrapping a fragile item
+     */
+    void mailUnwrapped(int time, int robot, MailItem mailItem);
+
+    /**
+     * A robot has been kept from moving onto the floor next to it for a time step by another robot delivering there
+     */
+    void robotBlocked(int time, int robot);
+
+    /**
+     * The mail pool's wrapping station has spent a time step wrapping a fragile item
+     */
+    void stationWrapped(int time, MailItem mailItem);
+
+    /**
+     * The wrapping station has finished a time step's wrapping
+     * @param depth the number of fragile items in the pool not yet fully wrapped
+     */
+    void wrappingQueueChanged(int time, int depth);
+}
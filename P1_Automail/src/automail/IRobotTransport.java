@@ -0,0 +1,20 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries commands to physical robots in real-time mode and waits for them to be acknowledged. Chosen by the
+ * Robot_Transport property, which names a class implementing this with a constructor taking nothing.
+ * Exchanges with different robots run at once, each on its own thread, so implementations must be safe to
+ * call from several threads; exchanges with any one robot never overlap.
+ */
+public interface IRobotTransport extends Closeable {
+
+    /**
+     * Sends the command and blocks until the robot answers
+     * @return whether the robot acknowledged the command, rather than refusing it
+     * @throws IOException if the robot could not be reached
+     */
+    boolean exchange(RobotCommand command) throws IOException;
+}
@@ -0,0 +1,16 @@
+package automail;
+
+/**
+ * Scores a single delivery, lower being better; the score of a run is the sum over all its deliveries.
+ * Chosen by the Scoring property, which names a class implementing this with a constructor taking nothing.
+ * Called on the simulation's own thread for every delivery, so implementations should be cheap.
+ */
+public interface IScoringFunction {
+
+    /**
+     * @param delay the time steps from the item's arrival to its delivery, never negative
+     * @param mailItem the item delivered
+     * @return the score of the delivery
+     */
+    double score(int delay, MailItem mailItem);
+}
@@ -0,0 +1,65 @@
+package automail;
+
+/**
+ * Receives the trace of a simulation: its configuration and results, and every change of robot state,
+ * pool addition and delivery along the way. Implementations decide how much of it to keep and where it goes.
+ */
+public interface ITraceSink {
+
+    /** How much of the trace is written */
+    enum Level {
+        /** Nothing at all */
+        OFF,
+        /** Only the configuration and the results */
+        SUMMARY,
+        /** Everything that happens at every time step */
+        FULL
+    }
+
+    /**
+     * A line of the configuration or results
+     */
+    void summary(String line);
+
+    /**
+     * Any other line of the full trace, such as an item a robot refused
+     */
+    void message(String line);
+
+    /**
+     * Newly arrived mail has been added to the pool
+     */
+    void mailArrived(int time, MailItem mailItem);
+
+    /**
+     * A robot has returned an undelivered item from its tube to the pool
+     */
+    void mailReturned(int time, MailItem mailItem);
+
+    /**
+     * @param robot the id of the robot
+     * @param tube the number of items in the robot's tube
+     */
+    void stateChanged(int time, int robot, int tube, Robot.RobotState from, Robot.RobotState to);
+
+    /**
+     * A robot has set off to deliver an item
+     */
+    void robotDelivering(int time, int robot, int tube, MailItem mailItem);
+
+    /**
+     * A robot has dropped off an item at its floor
+     */
+    void robotDelivered(int time, int robot, int tube, int mailItem);
+
+    /**
+     * A delivery has been confirmed
+     * @param count the number of items delivered so far
+     */
+    void mailDelivered(int time, int count, MailItem mailItem);
+
+    /**
+     * Writes out anything still held back, and releases any resources. Nothing may be traced afterwards.
+     */
+    void close();
+}
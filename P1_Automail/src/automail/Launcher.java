@@ -0,0 +1,85 @@
+package automail;
+
+import exceptions.BreakingFragileItemException;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Runs one simulation set up from the command line alone, as Property=value arguments over the defaults of
+ * {@link SimulationConfig.Builder}, without reading automail.properties. Meant for launching many short runs,
+ * where starting the JVM costs more than the simulation itself, together with a class data sharing archive
+ * (JDK 13 or later, and the classes must be in a jar, on the same path each time):
+ *
+ *   java -XX:ArchiveClassesAtExit=automail.jsa -cp automail.jar automail.Launcher --train
+ *   java -XX:SharedArchiveFile=automail.jsa -XX:TieredStopAtLevel=1 -cp automail.jar automail.Launcher Seed=3 Robots=4
+ *
+ * The training run takes a small simulation through every mail pool, engine and generator, so the archive
+ * holds the classes any later run loads. Trace=off, summary or full sets the trace, summary by default.
+ */
+public class Launcher {
+
+    /** The mail pools, engines and generators the training run goes through */
+    private static final String[] TRAIN_POOLS = {
+            "strategies.MailPool", "strategies.FloorMailPool", "strategies.BatchMailPool", "strategies.BulkMailPool",
+            "strategies.ConcurrentMailPool" };
+    private static final String[] TRAIN_ENGINES = { "tick", "event" };
+    private static final String[] TRAIN_GENERATORS = { "eager", "stream", "arrays" };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("--train")) {
+            train();
+            return;
+        }
+        SimulationConfig.Builder builder = SimulationConfig.builder();
+        ITraceSink.Level level = ITraceSink.Level.SUMMARY;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String key = equals < 0 ? arg : arg.substring(0, equals);
+            String value = equals < 0 ? "" : arg.substring(equals + 1);
+            if (key.equals("Trace")) {
+                level = ITraceSink.Level.valueOf(value.toUpperCase());
+            } else if (!builder.set(key, value)) {
+                System.out.println("Usage: Launcher [--train | Property=value ...]");
+                System.out.println("Unknown property " + key);
+                return;
+            }
+        }
+        ITraceSink trace = new PrintTraceSink(level, System.out);
+        Simulation simulation = new Simulation(builder.build(), trace);
+        try {
+            simulation.run();
+        } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
+            simulation.close();
+            e.printStackTrace();
+            System.out.println("Simulation unable to complete.");
+            return;
+        }
+        simulation.printResults();
+        simulation.writeMetrics();
+        simulation.close();
+    }
+
+    /**
+     * Runs a small simulation, without tracing, in each combination of mail pool, engine and generator
+     */
+    private static void train() throws Exception {
+        for (String pool : TRAIN_POOLS) {
+            for (String engine : TRAIN_ENGINES) {
+                for (String generator : TRAIN_GENERATORS) {
+                    SimulationConfig config = SimulationConfig.builder()
+                            .seed(1).floors(10).robots(2).mailToCreate(40).lastDeliveryTime(50)
+                            .caution(true).fragile(true).statistics(true)
+                            .mailPool(pool).engine(engine).generator(generator).build();
+                    Simulation simulation = new Simulation(config, new PrintTraceSink(ITraceSink.Level.OFF, System.out));
+                    try {
+                        simulation.run();
+                    } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
+                        // Only the classes loaded matter, not whether the run completed
+                    }
+                    simulation.printResults();
+                    simulation.close();
+                }
+            }
+        }
+    }
+}
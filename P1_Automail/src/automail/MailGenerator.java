@@ -1,5 +1,6 @@
 package automail;
 
+import java.io.IOException;
 import java.util.*;
 
 import strategies.IMailPool;
@@ -7,56 +8,102 @@ import strategies.IMailPool;
 /**
  * This class generates the mail
  */
-public class MailGenerator {
+public class MailGenerator implements IMailSource {
 
     public final int MAIL_TO_CREATE;
     public final int MAIL_MAX_WEIGHT;
     
     private int mailCreated;
 
-    private final Random random;
+    private final MailRandom random;
     /** This seed is used to make the behaviour deterministic */
+    private final long seed;
+    /** The generator's state after the draw which picked MAIL_TO_CREATE, where the items' draws begin */
+    private final MailRandom firstDraw;
     
     private boolean complete;
     private IMailPool mailPool;
+    private final SimulationContext context;
 
     private Map<Integer,ArrayList<MailItem>> allMail;
 
+    /** The distinct arrival times in allMail in ascending order, and how far the clock has got through them */
+    private int[] arrivalTimes;
+    private int nextArrival;
+
+    /**
+     * Streaming mode only holds the mail arriving in one window of time steps at once. Each window is made
+     * by replaying the random sequence from the first item's draws and keeping the items which arrive within it, so the
+     * items are exactly those of the eager mode, ids included.
+     */
+    private boolean streaming;
+    private boolean generateFragile;
+    /** The id of the first item created, the rest following on in order of creation */
+    private int firstMailId;
+    /** The number of time steps in each window, and the first step of the window currently held */
+    private int windowTicks;
+    private int windowStart;
+    /** The window's items in arrival order, those arriving at windowStart + t being windowItems[windowOffsets[t]] onwards */
+    private MailItem[] windowItems;
+    private int[] windowOffsets;
+    /** Room for gathering the next window's items as they are drawn, and for sorting them by arrival time */
+    private MailItem[] collected;
+    private int[] windowNext;
+
+    /**
+     * Arrays mode makes all the mail up front like the eager mode, but keeps it as primitives in MailStores
+     * rather than as objects, making each MailItem only as it arrives. The items are laid out in order of
+     * arrival, those arriving at time t being at positions arrayOffsets[t] up to arrayOffsets[t + 1], in chunks
+     * of ARRAY_CHUNK items which are dropped once all their items have arrived.
+     */
+    private static final int ARRAY_CHUNK_BITS = 16;
+    private static final int ARRAY_CHUNK = 1 << ARRAY_CHUNK_BITS;
+    private MailStore[] arrayMail;
+    private int[] arrayOffsets;
+    /** The chunks before this one have been dropped */
+    private int arrayDropped;
+
     /**
      * Constructor for mail generation
      * @param mailToCreate roughly how many mail items to create
      * @param mailPool where mail items go on arrival
      * @param seed random seed for generating mail
+     * @param context the simulation the mail is created for
      */
-    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
+    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed, SimulationContext context){
         if(seed.containsKey(true)){
-        	this.random = new Random((long) seed.get(true));
+        	this.seed = (long) seed.get(true);
         }
         else{
-        	this.random = new Random();	
+        	this.seed = new Random().nextLong();
         }
+        this.random = new MailRandom(this.seed);
         // Vary arriving mail by +/-20%
         MAIL_TO_CREATE = mailToCreate*4/5 + random.nextInt(mailToCreate*2/5);
+        // Where every replay of the items starts from
+        this.firstDraw = new MailRandom(random);
         MAIL_MAX_WEIGHT = mailMaxWeight;
         // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
         mailCreated = 0;
         complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        // At most one entry per time step up to the last delivery time, within the default load factor
+        allMail = new HashMap<Integer,ArrayList<MailItem>>(Math.min(MAIL_TO_CREATE, context.clock.LAST_DELIVERY_TIME) * 4 / 3 + 1);
         this.mailPool = mailPool;
+        this.context = context;
     }
 
     /**
      * @return a new mail item that needs to be delivered
      */
     private MailItem generateMail(boolean generateFragile){
-        int dest_floor = generateDestinationFloor();
-        int arrival_time = generateArrivalTime();
-        int weight = generateWeight();
-        boolean isFragile = generateFragile && generateFragile();
-        return new MailItem(dest_floor, arrival_time, weight, isFragile);
+        int dest_floor = generateDestinationFloor(random);
+        int arrival_time = generateArrivalTime(random);
+        int weight = generateWeight(random);
+        boolean isFragile = generateFragile && generateFragile(random);
+        return new MailItem(firstMailId + mailCreated, dest_floor, arrival_time, weight, isFragile);
     }
     
-    private boolean generateFragile() {
+    private static boolean generateFragile(MailRandom random) {
     	final int chance = 4;  // 1 in chance of being fragile
     	return random.nextInt(chance)+1 >= chance;
     	// return random.nextBoolean();
@@ -65,14 +112,14 @@ public class MailGenerator {
     /**
      * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
      */
-    private int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
+    private int generateDestinationFloor(MailRandom random){
+        return Building.LOWEST_FLOOR + random.nextInt(context.building.FLOORS);
     }
 
     /**
      * @return a random weight
      */
-    private int generateWeight(){
+    private int generateWeight(MailRandom random){
     	final double mean = 200.0; // grams for normal item
     	final double stddev = 1000.0; // grams
     	double base = random.nextGaussian();
@@ -84,14 +131,17 @@ public class MailGenerator {
     /**
      * @return a random arrival time before the last delivery time
      */
-    private int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
+    private int generateArrivalTime(MailRandom random){
+        return 1 + random.nextInt(context.clock.LAST_DELIVERY_TIME);
     }
 
     /**
      * This class initializes all mail and sets their corresponding values,
      */
     public void generateAllMail(boolean generateFragile){
+        firstMailId = context.reserveMailIds(MAIL_TO_CREATE);
+        /** Room for a little over the average number of items arriving in each time step */
+        int perArrivalTime = MAIL_TO_CREATE / context.clock.LAST_DELIVERY_TIME + 2;
         while(!complete){
             MailItem newMail =  generateMail(generateFragile);
             int timeToDeliver = newMail.getArrivalTime();
@@ -104,7 +154,7 @@ public class MailGenerator {
                 /** If the key doesn't exist then set a new key along with the array of MailItems to add during
                  * that time step.
                  */
-                ArrayList<MailItem> newMailList = new ArrayList<MailItem>();
+                ArrayList<MailItem> newMailList = new ArrayList<MailItem>(perArrivalTime);
                 newMailList.add(newMail);
                 allMail.put(timeToDeliver,newMailList);
             }
@@ -117,16 +167,266 @@ public class MailGenerator {
             }
         }
 
+        arrivalTimes = new int[allMail.size()];
+        int i = 0;
+        for (int time : allMail.keySet()) {
+            arrivalTimes[i++] = time;
+        }
+        Arrays.sort(arrivalTimes);
+        nextArrival = 0;
+    }
+
+    /**
+     * Makes all the mail up front, the same items as {@link #generateAllMail(boolean)}, but holds them as
+     * primitives in a {@link MailStore} until they arrive
+     */
+    public void generateArrayMail(boolean generateFragile) {
+        firstMailId = context.reserveMailIds(MAIL_TO_CREATE);
+        int lastDeliveryTime = context.clock.LAST_DELIVERY_TIME;
+        // A counting sort by arrival time, so one pass through the random sequence to count the items arriving
+        // at each time and another, replaying it, to put each item in its place
+        arrayOffsets = new int[lastDeliveryTime + 2];
+        MailRandom replay = new MailRandom(firstDraw);
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            generateDestinationFloor(replay);
+            arrayOffsets[generateArrivalTime(replay) + 1]++;
+            replay.skipGaussian(); // the weight
+            if (generateFragile) generateFragile(replay);
+        }
+        for (int t = 0; t <= lastDeliveryTime; t++) {
+            arrayOffsets[t + 1] += arrayOffsets[t];
+        }
+
+        arrayMail = new MailStore[(MAIL_TO_CREATE + ARRAY_CHUNK - 1) / ARRAY_CHUNK];
+        for (int c = 0; c < arrayMail.length; c++) {
+            int items = Math.min(ARRAY_CHUNK, MAIL_TO_CREATE - c * ARRAY_CHUNK);
+            arrayMail[c] = new MailStore(items);
+            arrayMail[c].allocate(items);
+        }
+        int[] next = Arrays.copyOf(arrayOffsets, lastDeliveryTime + 1);
+        replay = new MailRandom(firstDraw);
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            int dest_floor = generateDestinationFloor(replay);
+            int arrival_time = generateArrivalTime(replay);
+            int weight = generateWeight(replay);
+            boolean isFragile = generateFragile && generateFragile(replay);
+            int position = next[arrival_time]++;
+            arrayMail[position >>> ARRAY_CHUNK_BITS].set(position & (ARRAY_CHUNK - 1), firstMailId + i, dest_floor, arrival_time, weight, isFragile);
+        }
+        mailCreated = MAIL_TO_CREATE;
+        complete = true;
+        nextArrival = 0;
+    }
+
+    /**
+     * @return a new MailItem for the item held in arrays at the position in arrival order
+     */
+    private MailItem arrayMailItem(int position) {
+        return arrayMail[position >>> ARRAY_CHUNK_BITS].toMailItem(position & (ARRAY_CHUNK - 1));
+    }
+
+    /**
+     * Drops the chunks holding nothing but items before the position in arrival order
+     */
+    private void dropArraysBefore(int position) {
+        for (; arrayDropped < position >>> ARRAY_CHUNK_BITS; arrayDropped++) {
+            arrayMail[arrayDropped] = null;
+        }
+    }
+
+    /**
+     * Sets the generator up to make the mail as it is needed rather than all at once, with the same items as
+     * {@link #generateAllMail(boolean)}. Making each window costs a replay of every item's random numbers,
+     * so a window holds around itemsPerWindow items and memory does not grow with the number of items. The
+     * replay only works out the items in the window, just drawing past the rest.
+     * @param itemsPerWindow roughly how many items to hold at once
+     */
+    public void streamMail(boolean generateFragile, int itemsPerWindow) {
+        streaming = true;
+        this.generateFragile = generateFragile;
+        firstMailId = context.reserveMailIds(MAIL_TO_CREATE);
+        int lastDeliveryTime = context.clock.LAST_DELIVERY_TIME;
+        windowTicks = (int) Math.max(1, Math.min(lastDeliveryTime, (long) lastDeliveryTime * itemsPerWindow / Math.max(MAIL_TO_CREATE, 1)));
+        windowOffsets = new int[windowTicks + 1];
+        loadWindow(1);
+    }
+
+    /**
+     * Replays the random sequence to collect the items arriving in the window starting at the given time
+     */
+    private void loadWindow(int start) {
+        windowStart = start;
+        int end = start + windowTicks;
+        MailRandom replay = new MailRandom(firstDraw);
+        if (windowItems == null) {
+            windowItems = new MailItem[16];
+            collected = new MailItem[16];
+            windowNext = new int[windowTicks];
+        }
+        int count = 0;
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            int dest_floor = generateDestinationFloor(replay);
+            int arrival_time = generateArrivalTime(replay);
+            if (arrival_time < start || arrival_time >= end) {
+                // Only draw past the rest of an item outside the window, without working out its weight
+                replay.skipGaussian();
+                if (generateFragile) generateFragile(replay);
+                continue;
+            }
+            int weight = generateWeight(replay);
+            boolean isFragile = generateFragile && generateFragile(replay);
+            if (count == collected.length) collected = Arrays.copyOf(collected, count * 2);
+            collected[count++] = new MailItem(firstMailId + i, dest_floor, arrival_time, weight, isFragile);
+        }
+        // Counting sort by arrival time, which keeps the items arriving together in order of creation
+        Arrays.fill(windowOffsets, 0);
+        for (int i = 0; i < count; i++) {
+            windowOffsets[collected[i].getArrivalTime() - start + 1]++;
+        }
+        for (int t = 0; t < windowTicks; t++) {
+            windowOffsets[t + 1] += windowOffsets[t];
+        }
+        if (windowItems.length < count) windowItems = new MailItem[collected.length];
+        System.arraycopy(windowOffsets, 0, windowNext, 0, windowTicks);
+        for (int i = 0; i < count; i++) {
+            windowItems[windowNext[collected[i].getArrivalTime() - start]++] = collected[i];
+        }
+        Arrays.fill(windowItems, count, windowItems.length, null);
+        Arrays.fill(collected, 0, count, null);
+    }
+
+    /**
+     * Writes every item, in order of arrival, to a trace which can be replayed by {@link ArrivalTraceReader}.
+     * The mail must have been generated or set up to stream first.
+     */
+    public void recordArrivals(ArrivalTraceWriter writer) throws IOException {
+        if (streaming) {
+            for (int start = 1; start <= context.clock.LAST_DELIVERY_TIME; start += windowTicks) {
+                loadWindow(start);
+                for (int i = 0; i < windowOffsets[windowTicks]; i++) {
+                    writer.write(windowItems[i].getId() - firstMailId, windowItems[i]);
+                }
+            }
+            loadWindow(1);
+        } else if (arrayMail != null) {
+            for (int position = 0; position < MAIL_TO_CREATE; position++) {
+                MailItem mailItem = arrayMailItem(position);
+                writer.write(mailItem.getId() - firstMailId, mailItem);
+            }
+        } else {
+            for (int time : arrivalTimes) {
+                for (MailItem mailItem : allMail.get(time)) {
+                    writer.write(mailItem.getId() - firstMailId, mailItem);
+                }
+            }
+        }
+    }
+
+    public int getMailCount() {
+        return MAIL_TO_CREATE;
+    }
+
+    /**
+     * @return the seed all the mail is made from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Nothing to pass over, as the mail arriving at each time step is looked up by the time, but the arrays
+     * of mail which has already arrived can be dropped
+     */
+    public void skipTo(int time) {
+        if (arrayMail != null) {
+            dropArraysBefore(arrayOffsets[Math.min(Math.max(time, 0), context.clock.LAST_DELIVERY_TIME + 1)]);
+        }
+    }
+
+    /**
+     * @return the earliest time, no earlier than now, at which mail arrives, or Integer.MAX_VALUE if no more mail will arrive
+     */
+    public int nextArrivalTime() {
+        if (streaming) {
+            return nextStreamedArrivalTime();
+        }
+        if (arrayMail != null) {
+            return nextArrayArrivalTime();
+        }
+        while (nextArrival < arrivalTimes.length && arrivalTimes[nextArrival] < context.clock.Time()) {
+            nextArrival++;
+        }
+        return nextArrival < arrivalTimes.length ? arrivalTimes[nextArrival] : Integer.MAX_VALUE;
     }
     
+    /**
+     * Moves on through the arrival times, nextArrival being the earliest which may have mail still to arrive
+     */
+    private int nextArrayArrivalTime() {
+        int lastDeliveryTime = context.clock.LAST_DELIVERY_TIME;
+        nextArrival = Math.max(nextArrival, context.clock.Time());
+        while (nextArrival <= lastDeliveryTime && arrayOffsets[nextArrival + 1] == arrayOffsets[nextArrival]) {
+            nextArrival++;
+        }
+        return nextArrival <= lastDeliveryTime ? nextArrival : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Looks through the window held and, only once it has no more arrivals, the windows after it
+     */
+    private int nextStreamedArrivalTime() {
+        int lastDeliveryTime = context.clock.LAST_DELIVERY_TIME;
+        while (true) {
+            for (int t = Math.max(context.clock.Time() - windowStart, 0); t < windowTicks; t++) {
+                if (windowOffsets[t + 1] > windowOffsets[t]) return windowStart + t;
+            }
+            if (windowStart + windowTicks > lastDeliveryTime) return Integer.MAX_VALUE;
+            loadWindow(windowStart + windowTicks);
+        }
+    }
+
+    /**
+     * Passes the streamed mail arriving now to the pool, moving on to the window holding now if need be
+     */
+    private void streamStep() {
+        int now = context.clock.Time();
+        if (now >= windowStart + windowTicks && now <= context.clock.LAST_DELIVERY_TIME) {
+            loadWindow(1 + (now - 1) / windowTicks * windowTicks);
+        }
+        int t = now - windowStart;
+        if (t < 0 || t >= windowTicks) return;
+        for (int i = windowOffsets[t]; i < windowOffsets[t + 1]; i++) {
+            context.trace.mailArrived(now, windowItems[i]);
+            context.metrics.mailArrived(now, windowItems[i]);
+            mailPool.addToPool(windowItems[i]);
+        }
+    }
+
     /**
      * While there are steps left, create a new mail item to deliver
      */
     public void step(){
+        if (streaming) {
+            streamStep();
+            return;
+        }
+        if (arrayMail != null) {
+            int now = context.clock.Time();
+            if (now > context.clock.LAST_DELIVERY_TIME) return;
+            for (int i = arrayOffsets[now]; i < arrayOffsets[now + 1]; i++) {
+                MailItem mailItem = arrayMailItem(i);
+                context.trace.mailArrived(now, mailItem);
+                context.metrics.mailArrived(now, mailItem);
+                mailPool.addToPool(mailItem);
+            }
+            dropArraysBefore(arrayOffsets[now + 1]);
+            return;
+        }
     	// Check if there are any mail to create
-        if(this.allMail.containsKey(Clock.Time())){
-            for(MailItem mailItem : allMail.get(Clock.Time())){
-                System.out.printf("T: %3d > + addToPool [%s]%n", Clock.Time(), mailItem.toString());
+        if(this.allMail.containsKey(context.clock.Time())){
+            for(MailItem mailItem : allMail.get(context.clock.Time())){
+                context.trace.mailArrived(context.clock.Time(), mailItem);
+                context.metrics.mailArrived(context.clock.Time(), mailItem);
                 mailPool.addToPool(mailItem);
             }
         }
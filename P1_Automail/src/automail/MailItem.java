@@ -1,8 +1,5 @@
 package automail;
 
-import java.util.Map;
-import java.util.TreeMap;
-
 // import java.util.UUID;
 
 /**
@@ -12,8 +9,8 @@ public class MailItem{
 	
     /** Represents the destination floor to which the mail is intended to go */
     protected final int destination_floor;
-    /** The mail identifier */
-    protected final String id;
+    /** The mail identifier, the order in which the mail item was created in its simulation */
+    protected final int id;
     /** The time the mail item arrived */
     protected final int arrival_time;
     /** The weight in grams of the mail item */
@@ -46,13 +43,14 @@ public class MailItem{
 
     /**
      * Constructor for a MailItem
+     * @param id the order in which this mail item was created, from 0
      * @param dest_floor the destination floor intended for this mail item
      * @param arrival_time the time that the mail arrived
      * @param weight the weight of this mail item
      */
-    public MailItem(int dest_floor, int arrival_time, int weight, boolean isFragile){
+    public MailItem(int id, int dest_floor, int arrival_time, int weight, boolean isFragile){
+        this.id = id;
         this.destination_floor = dest_floor;
-        this.id = String.valueOf(hashCode());
         this.arrival_time = arrival_time;
         this.weight = weight;
         this.fragile = isFragile;
@@ -60,7 +58,7 @@ public class MailItem{
 
     @Override
     public String toString(){
-        return String.format("Mail Item:: ID: %6s | Arrival: %4d | Destination: %2d | Weight: %4d | %7s", id, arrival_time, destination_floor, weight, (fragile ? "fragile" : "normal"));
+        return String.format("Mail Item:: ID: %6d | Arrival: %4d | Destination: %2d | Weight: %4d | %7s", id, arrival_time, destination_floor, weight, (fragile ? "fragile" : "normal"));
     }
 
     /**
@@ -75,7 +73,7 @@ public class MailItem{
      *
      * @return the ID of the mail item
      */
-    public String getId() {
+    public int getId() {
         return id;
     }
 
@@ -97,14 +95,8 @@ public class MailItem{
 
     public boolean getFragile() { return fragile; }
    
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return id;
 	}
 }
@@ -0,0 +1,117 @@
+package automail;
+
+/**
+ * The generator of {@link java.util.Random}, giving exactly the same numbers from the same seed, but with its
+ * state in plain fields: the 48-bit seed of the linear congruential generator, and the second Gaussian of the
+ * last pair drawn if it has not been used yet. A copy of the state can be kept and carried on from later, and
+ * numbers can be passed over without the work of making them, as the mail generator does when replaying the
+ * mail for a window of time.
+ *
+ * Not safe for use by more than one thread at once, unlike java.util.Random, whose every draw is an atomic
+ * update for that reason.
+ */
+class MailRandom {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long seed;
+    /**
+     * The second of the last pair of Gaussians, kept as the parts it is made from until it is asked for: the
+     * multiplier is NaN if the pair was skipped and it has not been worked out
+     */
+    private boolean haveNextNextGaussian;
+    private double nextV2;
+    private double nextS;
+    private double nextMultiplier;
+
+    MailRandom(long seed) {
+        this.seed = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * A copy of another generator's state, which goes on to draw the same numbers
+     */
+    MailRandom(MailRandom other) {
+        this.seed = other.seed;
+        this.haveNextNextGaussian = other.haveNextNextGaussian;
+        this.nextV2 = other.nextV2;
+        this.nextS = other.nextS;
+        this.nextMultiplier = other.nextMultiplier;
+    }
+
+    private int next(int bits) {
+        seed = (seed * MULTIPLIER + ADDEND) & MASK;
+        return (int) (seed >>> (48 - bits));
+    }
+
+    /**
+     * As {@link java.util.Random#nextInt(int)}
+     */
+    int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        int r = next(31);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; u = next(31));
+        }
+        return r;
+    }
+
+    /**
+     * As {@link java.util.Random#nextDouble()}
+     */
+    double nextDouble() {
+        return (((long) next(26) << 27) + next(27)) * DOUBLE_UNIT;
+    }
+
+    /**
+     * As {@link java.util.Random#nextGaussian()}
+     */
+    double nextGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextV2 * (Double.isNaN(nextMultiplier) ? multiplier(nextS) : nextMultiplier);
+        }
+        double v1 = nextPair();
+        nextMultiplier = multiplier(nextS);
+        return v1 * nextMultiplier;
+    }
+
+    /**
+     * Draws what {@link #nextGaussian()} would, without working out the number itself
+     */
+    void skipGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+        } else {
+            nextPair();
+        }
+    }
+
+    /**
+     * Draws a point in the unit circle for a pair of Gaussians, keeping the second for the next call
+     * @return the first coordinate
+     */
+    private double nextPair() {
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        nextV2 = v2;
+        nextS = s;
+        nextMultiplier = Double.NaN;
+        haveNextNextGaussian = true;
+        return v1;
+    }
+
+    private static double multiplier(double s) {
+        return StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    }
+}
@@ -0,0 +1,118 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * Mail items kept in parallel arrays of primitives rather than as objects. Each item is an int handle into
+ * the arrays, about 17 bytes in all, where a MailItem and the structures holding it cost several times that
+ * and a pointer to follow at every step. MailItem objects are only made when an item has to be handed to
+ * code outside, such as a robot or the mail pool.
+ *
+ * Handles of released items are reused, so a store only grows to the most items it has held at once.
+ */
+public class MailStore extends HandleStore {
+
+    private static final int FRAGILE = 1;
+    private static final int WRAPPING_SHIFT = 1;
+
+    private int[] ids;
+    private int[] floors;
+    private int[] arrivals;
+    private int[] weights;
+    /** Whether the item is fragile in bit 0, and its wrapping in the bits above */
+    private byte[] flags;
+
+    /**
+     * @param capacity the number of items to make room for to begin with
+     */
+    public MailStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new int[capacity];
+        floors = new int[capacity];
+        arrivals = new int[capacity];
+        weights = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * @return the handle of the new item
+     */
+    public int add(int id, int floor, int arrival, int weight, boolean fragile) {
+        int handle = newHandle();
+        set(handle, id, floor, arrival, weight, fragile);
+        return handle;
+    }
+
+    /**
+     * Fills in an item at a handle from {@link #allocate(int)}
+     */
+    public void set(int handle, int id, int floor, int arrival, int weight, boolean fragile) {
+        ids[handle] = id;
+        floors[handle] = floor;
+        arrivals[handle] = arrival;
+        weights[handle] = weight;
+        flags[handle] = (byte) (fragile ? FRAGILE : 0);
+    }
+
+    /**
+     * @return the handle of a copy of the item, wrapping included
+     */
+    public int add(MailItem mailItem) {
+        int handle = add(mailItem.getId(), mailItem.getDestFloor(), mailItem.getArrivalTime(), mailItem.getWeight(), mailItem.getFragile());
+        flags[handle] |= mailItem.getWrapping() << WRAPPING_SHIFT;
+        return handle;
+    }
+
+    public int getId(int handle) {
+        return ids[handle];
+    }
+
+    public int getDestFloor(int handle) {
+        return floors[handle];
+    }
+
+    public int getArrivalTime(int handle) {
+        return arrivals[handle];
+    }
+
+    public int getWeight(int handle) {
+        return weights[handle];
+    }
+
+    public boolean getFragile(int handle) {
+        return (flags[handle] & FRAGILE) != 0;
+    }
+
+    public int getWrapping(int handle) {
+        return flags[handle] >> WRAPPING_SHIFT;
+    }
+
+    public void setWrapping(int handle, int wrapping) {
+        flags[handle] = (byte) ((flags[handle] & FRAGILE) | wrapping << WRAPPING_SHIFT);
+    }
+
+    /**
+     * @return a new MailItem with the same fields as the item, for handing outside the store
+     */
+    public MailItem toMailItem(int handle) {
+        MailItem mailItem = new MailItem(ids[handle], floors[handle], arrivals[handle], weights[handle], getFragile(handle));
+        for (int wrapping = getWrapping(handle); wrapping > 0; wrapping--) {
+            mailItem.wrap();
+        }
+        return mailItem;
+    }
+
+    @Override
+    protected int capacity() {
+        return ids.length;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        floors = Arrays.copyOf(floors, capacity);
+        arrivals = Arrays.copyOf(arrivals, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
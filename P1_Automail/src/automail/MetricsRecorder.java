@@ -0,0 +1,268 @@
+package automail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the measurements of one simulation in histograms and counters, all allocated when it is created,
+ * and writes them out as CSV or JSON once the simulation has finished:
+ * the latency of each delivery, the depth of the mail pool over time, how long each robot spends in each
+ * state, the ticks spent wrapping and unwrapping, how long robots are held up by fragile deliveries, and the
+ * throughput and queue of the mailroom's wrapping station if there is one.
+ *
+ * Anything measured over time, the pool depth, the wrapping queue and the robot states, is weighted by the time steps it lasted,
+ * so steps the event engine skips over count as much as those it runs.
+ */
+public class MetricsRecorder implements IMetricsSink {
+
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+    /** Time from arrival to delivery of each item */
+    private final Histogram latency = new Histogram();
+    /** Items waiting in the pool, one count per time step */
+    private final Histogram poolDepth = new Histogram();
+    private int depth;
+    private int depthSince;
+
+    /** Per robot, its current state, since when, and the time it has spent in each state, indexed robot * states + state */
+    private final Robot.RobotState[] state;
+    private final int[] stateSince;
+    private final long[] stateTicks;
+
+    /** The lengths of the spells in which a robot was held up, and per robot the spell it is in, if any */
+    private final Histogram blockedSpells = new Histogram();
+    private final long[] blockedTicks;
+    private final int[] blockedFrom;
+    private final int[] blockedLast;
+
+    private long wrappingTicks;
+    private long unwrappingTicks;
+
+    /** Ticks the wrapping station spent wrapping, the items it finished, and those in the pool still to wrap over time */
+    private long stationTicks;
+    private long stationItems;
+    private final Histogram wrappingQueue = new Histogram();
+    private int queued;
+    private int queuedSince;
+
+    private int finishTime = -1;
+
+    /**
+     * @param robots the number of robots in the simulation, whose ids run from 0
+     */
+    public MetricsRecorder(int robots) {
+        state = new Robot.RobotState[robots];
+        // Robots start off returning to the mailroom they are already in
+        Arrays.fill(state, Robot.RobotState.RETURNING);
+        stateSince = new int[robots];
+        stateTicks = new long[robots * STATES.length];
+        blockedTicks = new long[robots];
+        blockedFrom = new int[robots];
+        blockedLast = new int[robots];
+        Arrays.fill(blockedLast, Integer.MIN_VALUE);
+    }
+
+    @Override
+    public void robotStateChanged(int time, int robot, Robot.RobotState from, Robot.RobotState to) {
+        stateTicks[robot * STATES.length + state[robot].ordinal()] += time - stateSince[robot];
+        state[robot] = to;
+        stateSince[robot] = time;
+    }
+
+    @Override
+    public void poolChanged(int time, int depth) {
+        poolDepth.record(this.depth, time - depthSince);
+        this.depth = depth;
+        depthSince = time;
+    }
+
+    @Override
+    public void mailArrived(int time, MailItem mailItem) {
+        // Arrivals are measured through the latency of their deliveries
+    }
+
+    @Override
+    public void mailDelivered(int time, MailItem mailItem) {
+        latency.record(time - mailItem.getArrivalTime());
+    }
+
+    @Override
+    public void mailWrapped(int time, int robot, MailItem mailItem) {
+        wrappingTicks++;
+    }
+
+    @Override
+    public void mailUnwrapped(int time, int robot, MailItem mailItem) {
+        unwrappingTicks++;
+    }
+
+    @Override
+    public void stationWrapped(int time, MailItem mailItem) {
+        stationTicks++;
+        if (mailItem.getWrapping() == MailItem.WRAPPED) stationItems++;
+    }
+
+    @Override
+    public void wrappingQueueChanged(int time, int depth) {
+        wrappingQueue.record(queued, time - queuedSince);
+        queued = depth;
+        queuedSince = time;
+    }
+
+    @Override
+    public void robotBlocked(int time, int robot) {
+        blockedTicks[robot]++;
+        if (blockedLast[robot] != time - 1) {
+            endBlockedSpell(robot);
+            blockedFrom[robot] = time;
+        }
+        blockedLast[robot] = time;
+    }
+
+    private void endBlockedSpell(int robot) {
+        if (blockedLast[robot] != Integer.MIN_VALUE) {
+            blockedSpells.record(blockedLast[robot] - blockedFrom[robot] + 1);
+        }
+        blockedLast[robot] = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Brings everything measured over time up to the end of the simulation, before writing the results
+     * @param time the time the simulation finished
+     */
+    public void finish(int time) {
+        if (finishTime >= 0) return;
+        finishTime = time;
+        poolChanged(time, depth);
+        wrappingQueueChanged(time, queued);
+        for (int robot = 0; robot < state.length; robot++) {
+            robotStateChanged(time, robot, state[robot], state[robot]);
+            endBlockedSpell(robot);
+        }
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public Histogram getPoolDepth() {
+        return poolDepth;
+    }
+
+    public Histogram getBlockedSpells() {
+        return blockedSpells;
+    }
+
+    public Histogram getWrappingQueue() {
+        return wrappingQueue;
+    }
+
+    /**
+     * @return the items the wrapping station has finished wrapping per time step of the run
+     */
+    public double getStationThroughput() {
+        return finishTime > 0 ? (double) stationItems / finishTime : 0;
+    }
+
+    /**
+     * @return the time steps the robot has spent in the state, up to the last change of state or the finish
+     */
+    public long getStateTicks(int robot, Robot.RobotState state) {
+        return stateTicks[robot * STATES.length + state.ordinal()];
+    }
+
+    /**
+     * Writes the results as CSV, one measurement per row: metric, statistic, value
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("metric,statistic,value\n");
+        csvHistogram(out, "latency", latency);
+        csvHistogram(out, "pool_depth", poolDepth);
+        csvHistogram(out, "blocked_spell", blockedSpells);
+        csvRow(out, "wrapping", "ticks", Long.toString(wrappingTicks));
+        csvRow(out, "unwrapping", "ticks", Long.toString(unwrappingTicks));
+        csvHistogram(out, "wrapping_queue", wrappingQueue);
+        csvRow(out, "wrapping_station", "ticks", Long.toString(stationTicks));
+        csvRow(out, "wrapping_station", "items", Long.toString(stationItems));
+        csvRow(out, "wrapping_station", "throughput", format(getStationThroughput()));
+        for (int robot = 0; robot < state.length; robot++) {
+            String metric = "robot_" + robot;
+            for (Robot.RobotState s : STATES) {
+                csvRow(out, metric, s.name().toLowerCase(), Long.toString(getStateTicks(robot, s)));
+            }
+            csvRow(out, metric, "utilisation", format(utilisation(robot)));
+            csvRow(out, metric, "blocked", Long.toString(blockedTicks[robot]));
+        }
+    }
+
+    private static void csvHistogram(Appendable out, String metric, Histogram histogram) throws IOException {
+        csvRow(out, metric, "count", Long.toString(histogram.getTotalCount()));
+        csvRow(out, metric, "min", Long.toString(histogram.getMin()));
+        csvRow(out, metric, "mean", format(histogram.getMean()));
+        csvRow(out, metric, "p50", Long.toString(histogram.getValueAtPercentile(50)));
+        csvRow(out, metric, "p90", Long.toString(histogram.getValueAtPercentile(90)));
+        csvRow(out, metric, "p99", Long.toString(histogram.getValueAtPercentile(99)));
+        csvRow(out, metric, "max", Long.toString(histogram.getMax()));
+    }
+
+    private static void csvRow(Appendable out, String metric, String statistic, String value) throws IOException {
+        out.append(metric).append(',').append(statistic).append(',').append(value).append('\n');
+    }
+
+    /**
+     * Writes the results as a JSON object, with a field for each histogram and an array of the robots
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append("{\n");
+        jsonHistogram(out, "latency", latency);
+        jsonHistogram(out, "pool_depth", poolDepth);
+        jsonHistogram(out, "blocked_spell", blockedSpells);
+        out.append("  \"wrapping_ticks\": ").append(Long.toString(wrappingTicks)).append(",\n");
+        out.append("  \"unwrapping_ticks\": ").append(Long.toString(unwrappingTicks)).append(",\n");
+        jsonHistogram(out, "wrapping_queue", wrappingQueue);
+        out.append("  \"wrapping_station\": {\"ticks\": ").append(Long.toString(stationTicks))
+                .append(", \"items\": ").append(Long.toString(stationItems))
+                .append(", \"throughput\": ").append(format(getStationThroughput())).append("},\n");
+        out.append("  \"robots\": [");
+        for (int robot = 0; robot < state.length; robot++) {
+            out.append(robot == 0 ? "\n" : ",\n").append("    {\"id\": ").append(Integer.toString(robot));
+            for (Robot.RobotState s : STATES) {
+                out.append(", \"").append(s.name().toLowerCase()).append("\": ").append(Long.toString(getStateTicks(robot, s)));
+            }
+            out.append(", \"utilisation\": ").append(format(utilisation(robot)));
+            out.append(", \"blocked\": ").append(Long.toString(blockedTicks[robot])).append('}');
+        }
+        out.append(state.length == 0 ? "]\n" : "\n  ]\n").append("}\n");
+    }
+
+    private static void jsonHistogram(Appendable out, String metric, Histogram histogram) throws IOException {
+        out.append("  \"").append(metric).append("\": {")
+                .append("\"count\": ").append(Long.toString(histogram.getTotalCount()))
+                .append(", \"min\": ").append(Long.toString(histogram.getMin()))
+                .append(", \"mean\": ").append(format(histogram.getMean()))
+                .append(", \"p50\": ").append(Long.toString(histogram.getValueAtPercentile(50)))
+                .append(", \"p90\": ").append(Long.toString(histogram.getValueAtPercentile(90)))
+                .append(", \"p99\": ").append(Long.toString(histogram.getValueAtPercentile(99)))
+                .append(", \"max\": ").append(Long.toString(histogram.getMax()))
+                .append("},\n");
+    }
+
+    /**
+     * @return the share of its time the robot has spent away from the mailroom, delivering or returning
+     */
+    private double utilisation(int robot) {
+        long busy = 0;
+        long all = 0;
+        for (Robot.RobotState s : STATES) {
+            long ticks = getStateTicks(robot, s);
+            all += ticks;
+            if (s != Robot.RobotState.WAITING) busy += ticks;
+        }
+        return all == 0 ? 0 : (double) busy / all;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
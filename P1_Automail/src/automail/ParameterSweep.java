@@ -0,0 +1,311 @@
+package automail;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Searches over ranges of the main simulation properties for the configurations giving the best score for
+ * the number of robots. Every configuration is run over several seeds, and scored by its mean final score.
+ * Runs are spread over a fork-join pool in one JVM, and each result is kept by configuration and seed so
+ * that no run is ever made twice by the same sweep.
+ *
+ * The ranges are set in automail.properties as Sweep.&lt;property&gt;, for Floors, Robots, Mail_to_Create,
+ * Mail_Max_Weight, Caution and Fragile, as either a list, Sweep.Caution=true,false, or a range with an
+ * optional step, Sweep.Robots=1..8 or Sweep.Mail_to_Create=100..400:100. Properties not swept keep their value.
+ *
+ * Usage: ParameterSweep grid|halving [seeds] [threads]
+ * grid runs every configuration on all the seeds. halving runs every configuration on one seed, keeps the
+ * better half, doubles the seeds and so on up to the given number, better being by Pareto rank of robots
+ * against score and then by score. Either way the Pareto front of robots against score is printed at the end.
+ * The seeds default to 4, starting from the Seed property (or 0), and the threads to the number of processors.
+ * A run still going at Sweep_Max_Time (100 times the Last_Delivery_Time by default) is taken to have failed.
+ */
+public class ParameterSweep {
+
+    /** The properties which can be swept, in the order they are printed */
+    public static final List<String> SWEPT = Collections.unmodifiableList(Arrays.asList(
+            "Floors", "Robots", "Mail_to_Create", "Mail_Max_Weight", "Caution", "Fragile"));
+
+    /** The results of one configuration over the seeds it has been run on */
+    public static class Outcome {
+        /** The value of each swept property, in the order of SWEPT */
+        public final Map<String, String> config;
+        public final int robots;
+        public final double meanScore;
+        public final double meanTime;
+        public final int seeds;
+        /** Why a run of the configuration could not complete, or null if they all did */
+        public final Throwable failure;
+
+        Outcome(Map<String, String> config, int robots, double meanScore, double meanTime, int seeds, Throwable failure) {
+            this.config = config;
+            this.robots = robots;
+            this.meanScore = meanScore;
+            this.meanTime = meanTime;
+            this.seeds = seeds;
+            this.failure = failure;
+        }
+
+        @Override
+        public String toString() {
+            return describe(config);
+        }
+    }
+
+    private final Properties automailProperties;
+    private final int firstSeed;
+    private final int maxTime;
+    private final int threads;
+    /** Every run made so far, by configuration and then seed */
+    private final Map<String, Map<Integer, BatchRunner.Result>> cache = new HashMap<>();
+
+    /**
+     * @param automailProperties the configuration shared by every run, the swept properties and Seed overridden
+     * @param threads the number of simulations to run at once
+     */
+    public ParameterSweep(Properties automailProperties, int threads) {
+        this.automailProperties = automailProperties;
+        this.firstSeed = Integer.parseInt(automailProperties.getProperty("Seed", "0"));
+        this.maxTime = Integer.parseInt(automailProperties.getProperty("Sweep_Max_Time",
+                Integer.toString(100 * Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time")))));
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("grid") || args[0].equals("halving"))) {
+            System.out.println("Usage: ParameterSweep grid|halving [seeds] [threads]");
+            return;
+        }
+        Properties automailProperties = Simulation.loadProperties();
+        int seeds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        ParameterSweep sweep = new ParameterSweep(automailProperties, threads);
+        List<Map<String, String>> configs = configurations(automailProperties);
+        System.out.printf("Sweep: %d configurations, %s over up to %d seeds on %d threads%n",
+                configs.size(), args[0], seeds, threads);
+        List<Outcome> outcomes = args[0].equals("grid") ? sweep.grid(configs, seeds) : sweep.halving(configs, seeds);
+        printOutcomes(outcomes, System.out);
+        System.out.println("Pareto front of robots against score:");
+        for (Outcome outcome : paretoFront(outcomes)) {
+            System.out.printf("  robots %d, score %.2f: %s%n", outcome.robots, outcome.meanScore, outcome);
+        }
+    }
+
+    /**
+     * @return every combination of the values of the Sweep. properties, with a property not swept taking its
+     * value from the configuration
+     */
+    public static List<Map<String, String>> configurations(Properties automailProperties) {
+        for (String key : automailProperties.stringPropertyNames()) {
+            if (key.startsWith("Sweep.") && !SWEPT.contains(key.substring("Sweep.".length()))) {
+                throw new IllegalArgumentException(key + " cannot be swept, only " + SWEPT);
+            }
+        }
+        List<Map<String, String>> configs = new ArrayList<>();
+        configs.add(new LinkedHashMap<>());
+        for (String key : SWEPT) {
+            String range = automailProperties.getProperty("Sweep." + key);
+            List<String> values = range == null
+                    ? Collections.singletonList(automailProperties.getProperty(key)) : parseRange(range);
+            List<Map<String, String>> extended = new ArrayList<>(configs.size() * values.size());
+            for (Map<String, String> config : configs) {
+                for (String value : values) {
+                    Map<String, String> next = new LinkedHashMap<>(config);
+                    next.put(key, value);
+                    extended.add(next);
+                }
+            }
+            configs = extended;
+        }
+        return configs;
+    }
+
+    /**
+     * @param range a list of values, a,b,c, or a range of integers from a to b inclusive, a..b or a..b:step
+     */
+    static List<String> parseRange(String range) {
+        range = range.trim();
+        int dots = range.indexOf("..");
+        if (dots < 0) {
+            List<String> values = new ArrayList<>();
+            for (String value : range.split(",")) {
+                values.add(value.trim());
+            }
+            return values;
+        }
+        int colon = range.indexOf(':', dots);
+        int from = Integer.parseInt(range.substring(0, dots).trim());
+        int to = Integer.parseInt(range.substring(dots + 2, colon < 0 ? range.length() : colon).trim());
+        int step = colon < 0 ? 1 : Integer.parseInt(range.substring(colon + 1).trim());
+        if (step <= 0 || to < from) {
+            throw new IllegalArgumentException("Bad range " + range);
+        }
+        List<String> values = new ArrayList<>();
+        for (int value = from; value <= to; value += step) {
+            values.add(Integer.toString(value));
+        }
+        return values;
+    }
+
+    /**
+     * Runs every configuration on the same seeds
+     * @return the outcome of each configuration, in the order given
+     */
+    public List<Outcome> grid(List<Map<String, String>> configs, int seeds) {
+        return evaluate(configs, seeds);
+    }
+
+    /**
+     * Successive halving: runs every configuration on one seed, then keeps the better half of them for twice
+     * the seeds, and so on until a single configuration is left or they have been run on all the seeds.
+     * Better is by Pareto rank of robots against score, then by score, so that the search narrows in on the
+     * front rather than on the configurations with the most robots.
+     * @return the outcome of each configuration left at the end
+     */
+    public List<Outcome> halving(List<Map<String, String>> configs, int seeds) {
+        int budget = 1;
+        List<Outcome> outcomes = evaluate(configs, Math.min(budget, seeds));
+        while (outcomes.size() > 1 && budget < seeds) {
+            List<Outcome> ranked = rank(outcomes);
+            List<Map<String, String>> kept = new ArrayList<>();
+            for (Outcome outcome : ranked.subList(0, (ranked.size() + 1) / 2)) {
+                kept.add(outcome.config);
+            }
+            budget = Math.min(budget * 2, seeds);
+            outcomes = evaluate(kept, budget);
+        }
+        return outcomes;
+    }
+
+    /**
+     * @return the configurations in order of Pareto rank of robots against score and then of score, those
+     * that failed last
+     */
+    static List<Outcome> rank(List<Outcome> outcomes) {
+        List<Outcome> remaining = new ArrayList<>();
+        List<Outcome> failed = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            (outcome.failure == null ? remaining : failed).add(outcome);
+        }
+        List<Outcome> ranked = new ArrayList<>(outcomes.size());
+        while (!remaining.isEmpty()) {
+            List<Outcome> front = paretoFront(remaining);
+            front.sort(Comparator.comparingDouble(outcome -> outcome.meanScore));
+            ranked.addAll(front);
+            remaining.removeAll(front);
+        }
+        ranked.addAll(failed);
+        return ranked;
+    }
+
+    /**
+     * @return the configurations which completed and which no other beats on both robots and score, that is
+     * the best score for each number of robots that is better than any with fewer, in order of robots
+     */
+    public static List<Outcome> paretoFront(List<Outcome> outcomes) {
+        List<Outcome> sorted = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            if (outcome.failure == null) sorted.add(outcome);
+        }
+        sorted.sort(Comparator.<Outcome>comparingInt(outcome -> outcome.robots)
+                .thenComparingDouble(outcome -> outcome.meanScore));
+        List<Outcome> front = new ArrayList<>();
+        double best = Double.POSITIVE_INFINITY;
+        for (Outcome outcome : sorted) {
+            if (outcome.meanScore < best) {
+                front.add(outcome);
+                best = outcome.meanScore;
+            }
+        }
+        return front;
+    }
+
+    /**
+     * Runs each configuration on seeds firstSeed to firstSeed + seeds - 1, all at once on a fork-join pool,
+     * except for the runs already made
+     */
+    private List<Outcome> evaluate(List<Map<String, String>> configs, int seeds) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<BatchRunner.Result>> tasks = new ArrayList<>();
+            /** The cached runs of the configuration of each task, for its result to go in */
+            List<Map<Integer, BatchRunner.Result>> targets = new ArrayList<>();
+            for (Map<String, String> config : configs) {
+                Map<Integer, BatchRunner.Result> runs = cache.computeIfAbsent(describe(config), key -> new HashMap<>());
+                for (int i = 0; i < seeds; i++) {
+                    final int seed = firstSeed + i;
+                    if (!runs.containsKey(seed)) {
+                        tasks.add(pool.submit(() -> runOne(config, seed)));
+                        targets.add(runs);
+                    }
+                }
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                BatchRunner.Result result = tasks.get(i).join();
+                targets.get(i).put(result.seed, result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        List<Outcome> outcomes = new ArrayList<>(configs.size());
+        for (Map<String, String> config : configs) {
+            outcomes.add(outcome(config, seeds));
+        }
+        return outcomes;
+    }
+
+    private Outcome outcome(Map<String, String> config, int seeds) {
+        Map<Integer, BatchRunner.Result> runs = cache.get(describe(config));
+        double score = 0;
+        double time = 0;
+        Throwable failure = null;
+        for (int i = 0; i < seeds; i++) {
+            BatchRunner.Result result = runs.get(firstSeed + i);
+            if (result.failure != null && failure == null) {
+                failure = result.failure;
+            }
+            score += result.score;
+            time += result.time;
+        }
+        return new Outcome(config, Integer.parseInt(config.get("Robots")), score / seeds, time / seeds, seeds, failure);
+    }
+
+    private BatchRunner.Result runOne(Map<String, String> config, int seed) {
+        Properties properties = new Properties();
+        properties.putAll(automailProperties);
+        properties.putAll(config);
+        return BatchRunner.runOne(properties, seed, maxTime);
+    }
+
+    private static String describe(Map<String, String> config) {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (description.length() > 0) description.append(", ");
+            description.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return description.toString();
+    }
+
+    public static void printOutcomes(List<Outcome> outcomes, PrintStream out) {
+        for (Outcome outcome : outcomes) {
+            if (outcome.failure == null) {
+                out.printf("%s: score %.2f, delivery time %.1f over %d seeds%n",
+                        outcome, outcome.meanScore, outcome.meanTime, outcome.seeds);
+            } else {
+                out.printf("%s: unable to complete: %s%n", outcome, outcome.failure.getMessage());
+            }
+        }
+    }
+}
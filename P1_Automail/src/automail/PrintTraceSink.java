@@ -0,0 +1,55 @@
+package automail;
+
+import java.io.PrintStream;
+
+/**
+ * Formats the trace straight onto a print stream, on the thread running the simulation
+ */
+public class PrintTraceSink implements ITraceSink {
+
+    private final boolean summary;
+    private final boolean full;
+    private final PrintStream out;
+
+    public PrintTraceSink(Level level, PrintStream out) {
+        this.summary = level != Level.OFF;
+        this.full = level == Level.FULL;
+        this.out = out;
+    }
+
+    public void summary(String line) {
+        if (summary) out.println(line);
+    }
+
+    public void message(String line) {
+        if (full) out.println(line);
+    }
+
+    public void mailArrived(int time, MailItem mailItem) {
+        if (full) out.printf("T: %3d > + addToPool [%s]%n", time, mailItem.toString());
+    }
+
+    public void mailReturned(int time, MailItem mailItem) {
+        if (full) out.printf("T: %3d >  +addToPool [%s]%n", time, mailItem.toString());
+    }
+
+    public void stateChanged(int time, int robot, int tube, Robot.RobotState from, Robot.RobotState to) {
+        if (full) out.printf("T: %3d > %7s changed from %s to %s%n", time, String.format("R%d(%1d)", robot, tube), from, to);
+    }
+
+    public void robotDelivering(int time, int robot, int tube, MailItem mailItem) {
+        if (full) out.printf("T: %3d > %9s-> [%s]%n", time, String.format("R%d(%1d)", robot, tube), mailItem.toString());
+    }
+
+    public void robotDelivered(int time, int robot, int tube, int mailItem) {
+        if (full) out.printf("T: %3d > %9s-> Deliver item %d%n", time, String.format("R%d(%1d)", robot, tube), mailItem);
+    }
+
+    public void mailDelivered(int time, int count, MailItem mailItem) {
+        if (full) out.printf("T: %3d > Deliv(%4d) [%s]%n", time, count, mailItem.toString());
+    }
+
+    public void close() {
+        out.flush();
+    }
+}
@@ -0,0 +1,160 @@
+package automail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulation against the wall clock, one time step every period, for driving physical robots. Time
+ * steps are due at fixed times from the start, the n-th at start + n * period, so a slow step makes those
+ * after it start late rather than pushing the whole schedule back. After each step every robot is sent its
+ * new position through the robot transport, each exchange on its own thread, and the step waits for all the
+ * acknowledgements. A step still running when the next is due has overrun its deadline, and is counted.
+ *
+ * Exchanges run on virtual threads where the JVM has them (Java 21 on), or else on pooled platform threads.
+ */
+public class RealTimePacer {
+
+    private final long periodNanos;
+    private final IRobotTransport transport;
+    private final ExecutorService exchanges;
+    private final boolean virtualThreads;
+
+    /** How late each step started against its due time, in microseconds */
+    private final Histogram jitter = new Histogram();
+    private long startNanos;
+    private long ticks;
+    private long overruns;
+    private long unacknowledged;
+    private long failed;
+
+    /**
+     * @param periodNanos the wall-clock time each time step takes
+     * @param transport where the robots' commands are sent
+     */
+    public RealTimePacer(long periodNanos, IRobotTransport transport) {
+        this.periodNanos = periodNanos;
+        this.transport = transport;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.exchanges = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "robot-exchange");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null if the JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the schedule, the first time step being due now
+     */
+    public void begin() {
+        startNanos = System.nanoTime();
+        ticks = 0;
+    }
+
+    /**
+     * Waits until the next time step is due, returning at once if it is already late
+     */
+    public void awaitTick() throws InterruptedIOException {
+        long due = startNanos + ticks * periodNanos;
+        for (long left = due - System.nanoTime(); left > 0; left = due - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.interrupted()) throw new InterruptedIOException("Interrupted waiting for the next time step");
+        }
+        jitter.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+    }
+
+    /**
+     * Sends every robot its position after the time step just run, waits for them all to answer, and counts
+     * the step as overrun if the next one is already due
+     * @param robots the robots, in order of id
+     * @param time the simulation time the step ended at
+     */
+    public void exchange(Robot[] robots, int time) throws InterruptedIOException {
+        List<Future<Boolean>> answers = new ArrayList<>(robots.length);
+        for (Robot robot : robots) {
+            RobotCommand command = new RobotCommand(robot.getId(), time, robot.getCurrent_floor(),
+                    robot.getDestination_floor(), robot.current_state);
+            answers.add(exchanges.submit(() -> transport.exchange(command)));
+        }
+        for (Future<Boolean> answer : answers) {
+            try {
+                if (!answer.get()) unacknowledged++;
+            } catch (ExecutionException e) {
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the robots to answer");
+            }
+        }
+        ticks++;
+        if (System.nanoTime() > startNanos + ticks * periodNanos) {
+            overruns++;
+        }
+    }
+
+    /**
+     * Stops the exchange threads and closes the transport
+     */
+    public void close() throws IOException {
+        exchanges.shutdownNow();
+        transport.close();
+    }
+
+    public Histogram getJitter() {
+        return jitter;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the time steps still running when the next was due
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the commands robots refused, and those which could not reach their robot
+     */
+    public long getUnacknowledged() {
+        return unacknowledged;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Traces a summary of how well the schedule was kept
+     */
+    public void report(ITraceSink trace) {
+        trace.summary(String.format("Real time: %d steps of %.3f ms, %d overran, exchanges on %s threads",
+                ticks, periodNanos / 1e6, overruns, virtualThreads ? "virtual" : "platform"));
+        trace.summary(String.format("Tick jitter (us): mean %.1f, p50 %d, p99 %d, max %d",
+                jitter.getMean(), jitter.getValueAtPercentile(50), jitter.getValueAtPercentile(99), jitter.getMax()));
+        if (unacknowledged > 0 || failed > 0) {
+            trace.summary(String.format("Robot commands: %d refused, %d failed", unacknowledged, failed));
+        }
+    }
+}
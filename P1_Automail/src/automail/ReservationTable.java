@@ -0,0 +1,167 @@
+package automail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Models robots sharing the building's shaft, which has a side for robots going up and a side for robots going
+ * down: no more than a fixed number of robots may be on either side of a floor above the mailroom at any one
+ * time. A robot setting off reserves the floors of its path ahead of time, one per time step,
+ * in a grid of time by floor, for as far as they are free, and may only move onto a floor it holds. A robot
+ * which cannot reserve the next floor waits where it is, and the time it spends waiting is counted as
+ * contention. Robots standing still, to deliver or to wait, keep their floor without a reservation, so a floor
+ * may hold more than the limit for as long as they stay. They stay on the side they arrived on.
+ *
+ * Robots going up only ever wait for robots above them, and robots going down, or turning to go down, only for
+ * robots below them, so the robots can never all be waiting for each other: the last robot going up is free to
+ * move or turn, and the down side ends in the mailroom, which has room for any number of robots.
+ *
+ * Reservations go no further ahead than a robot can travel in one leg, so the grid only keeps a short window of
+ * time steps, each row being cleared when it is first used for a later time. Checking or making a reservation
+ * is a single lookup. The mailroom holds any number of robots and is never reserved.
+ */
+public class ReservationTable {
+
+    /** The most robots on either side of a floor above the mailroom at once */
+    public final int CAPACITY;
+
+    private final int floors;
+    private final int mask;
+    /** Robots on each side of each floor per time step, indexed ((time & mask) * (floors + 1) + floor) * 2 + side */
+    private final int[] counts;
+    /** The time step each row holds, so a row from an earlier time can be cleared before reuse */
+    private final int[] rowTime;
+
+    private long granted;
+    private long refused;
+    /** Time steps robots spent waiting for a floor */
+    private long waitSteps;
+
+    /**
+     * @param floors the number of floors in the building
+     * @param capacity the most robots on either side of a floor above the mailroom at once
+     */
+    public ReservationTable(int floors, int capacity) {
+        assert(capacity > 0);
+        CAPACITY = capacity;
+        this.floors = floors;
+        // A leg is at most the height of the building, plus the step it is reserved in
+        int rows = Integer.highestOneBit(floors + 2) << 1;
+        this.mask = rows - 1;
+        this.counts = new int[rows * (floors + 1) * 2];
+        this.rowTime = new int[rows];
+        Arrays.fill(rowTime, -1);
+    }
+
+    /**
+     * @param down whether the side of the shaft is the one going down
+     * @return the number of robots on or reserved for the side of the floor at the time step
+     */
+    public int count(int time, int floor, boolean down) {
+        int row = time & mask;
+        return rowTime[row] == time && inTable(floor) ? counts[(row * (floors + 1) + floor) * 2 + (down ? 1 : 0)] : 0;
+    }
+
+    /**
+     * Reserves the floor at the time step for a robot moving onto it, if its side of the floor has room
+     * @param down whether the robot is going down
+     * @return whether the robot may be on the floor then
+     */
+    public boolean reserve(int time, int floor, boolean down) {
+        if (!inTable(floor)) return true;
+        int i = slot(time, floor, down);
+        if (counts[i] >= CAPACITY) {
+            refused++;
+            return false;
+        }
+        counts[i]++;
+        granted++;
+        return true;
+    }
+
+    /**
+     * Puts a robot on the floor at the time step whether or not there is room, as for a robot standing still
+     * @param down whether the robot is on the side going down
+     */
+    public void occupy(int time, int floor, boolean down) {
+        if (inTable(floor)) counts[slot(time, floor, down)]++;
+    }
+
+    /**
+     * Gives up a reservation made by {@link #reserve(int, int, boolean)} or {@link #occupy(int, int, boolean)}
+     */
+    public void release(int time, int floor, boolean down) {
+        if (inTable(floor) && rowTime[time & mask] == time) counts[slot(time, floor, down)]--;
+    }
+
+    /**
+     * A robot has spent a time step waiting for a floor it could not reserve
+     */
+    void waited() {
+        waitSteps++;
+    }
+
+    public long getWaitSteps() {
+        return waitSteps;
+    }
+
+    public long getGranted() {
+        return granted;
+    }
+
+    public long getRefused() {
+        return refused;
+    }
+
+    /**
+     * Writes the counters of the table, or zeros if there is none, for a snapshot. The reservations themselves
+     * are made again by the robots, each of which saves the path it has reserved.
+     */
+    static void writeState(DataOutput out, ReservationTable table) throws IOException {
+        out.writeLong(table == null ? 0 : table.granted);
+        out.writeLong(table == null ? 0 : table.refused);
+        out.writeLong(table == null ? 0 : table.waitSteps);
+    }
+
+    /**
+     * Reads the counters written by {@link #writeState}, into the table if there is one
+     */
+    static void readState(DataInput in, ReservationTable table) throws IOException {
+        long granted = in.readLong();
+        long refused = in.readLong();
+        long waitSteps = in.readLong();
+        if (table != null) {
+            table.granted = granted;
+            table.refused = refused;
+            table.waitSteps = waitSteps;
+        }
+    }
+
+    /**
+     * Traces how much the robots held each other up
+     */
+    public void report(ITraceSink trace) {
+        trace.summary(String.format("Shaft contention: capacity %d, %d robot time steps spent waiting, %d of %d reservations refused",
+                CAPACITY, waitSteps, refused, granted + refused));
+    }
+
+    private boolean inTable(int floor) {
+        return floor != Building.MAILROOM_LOCATION && floor >= 0 && floor <= floors;
+    }
+
+    /**
+     * @return the index of the side of the floor at the time step, clearing the row first if it last held an
+     * earlier time
+     */
+    private int slot(int time, int floor, boolean down) {
+        int row = time & mask;
+        int start = row * (floors + 1) * 2;
+        if (rowTime[row] != time) {
+            Arrays.fill(counts, start, start + (floors + 1) * 2, 0);
+            rowTime[row] = time;
+        }
+        return start + floor * 2 + (down ? 1 : 0);
+    }
+}
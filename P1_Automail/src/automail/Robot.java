@@ -4,8 +4,11 @@ import exceptions.BreakingFragileItemException;
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * The robot delivers mail!
@@ -15,7 +18,10 @@ public class Robot {
     static public final int INDIVIDUAL_MAX_WEIGHT = 2000;
 
     IMailDelivery delivery;
-    protected final String id;
+    /** The simulation this robot belongs to */
+    protected final SimulationContext context;
+    /** The robot identifier, the order in which the robot was created in its simulation */
+    protected final int id;
     /** Possible states the robot can be in */
     public enum RobotState { DELIVERING, WAITING, RETURNING }
     public RobotState current_state;
@@ -25,9 +31,24 @@ public class Robot {
     private boolean receivedDispatch;
     
     private MailItem deliveryItem = null;
-    private MailItem tube = null;
+    /** The items in the tube, tube[0] next, in the order they are delivered after the one in hand */
+    private final MailItem[] tube;
+    private int tubeCount;
     
     private int deliveryCounter;
+
+    /** The robot manager indexing where this robot is parked, and the entry it has there */
+    private RobotManager manager;
+    private int parkedFloor = -1;
+    private boolean parkedFragile;
+
+
+    /**
+     * When the shaft is modelled, the last time step of the path the robot has reserved ahead, and whether that
+     * path goes down, which is also the side of the shaft the robot stays on when it stops
+     */
+    private int reservedUntil = -1;
+    private boolean reservedDown;
     
 
     /**
@@ -35,10 +56,26 @@ public class Robot {
      * also set it to be waiting for mail.
      * @param delivery governs the final delivery
      * @param mailPool is the source of mail items
+     * @param context the simulation the robot belongs to
      */
     // PRIOROTISE NON FRAGILE ITEMS SO THEY DONT HAVE TO WAIT FOR THE FRAGILE ITEM TO BE DELIVERED
-    public Robot(IMailDelivery delivery, IMailPool mailPool){
-    	id = "R" + hashCode();
+    public Robot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context){
+        this(delivery, mailPool, context, 1);
+    }
+
+    /**
+     * Initiates the robot's location at the start to be at the mailroom
+     * also set it to be waiting for mail.
+     * @param delivery governs the final delivery
+     * @param mailPool is the source of mail items
+     * @param context the simulation the robot belongs to
+     * @param tubeCapacity the number of items the tube holds
+     */
+    public Robot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context, int tubeCapacity){
+    	assert(tubeCapacity > 0);
+    	this.context = context;
+    	id = context.nextRobotId();
+    	this.tube = new MailItem[tubeCapacity];
 
     	current_state = RobotState.RETURNING;
         current_floor = Building.MAILROOM_LOCATION;
@@ -56,11 +93,11 @@ public class Robot {
         return current_floor;
     }
 
-    public void setCurrent_floor(int current_floor) { this.current_floor = current_floor; }
+    public void setCurrent_floor(int current_floor) { this.current_floor = current_floor; relocate(); }
 
     public MailItem getDeliveryItem(){ return this.deliveryItem; }
 
-    public void setDeliveryItem(MailItem deliveryItem) { this.deliveryItem = deliveryItem; }
+    public void setDeliveryItem(MailItem deliveryItem) { this.deliveryItem = deliveryItem; relocate(); }
 
     public int getDeliveryCounter(){ return this.deliveryCounter; }
 
@@ -68,17 +105,24 @@ public class Robot {
 
     public int getDestination_floor() { return this.destination_floor; }
 
-    public void setDestination_floor(int destination_floor) { this.destination_floor = destination_floor; }
+    public void setDestination_floor(int destination_floor) { this.destination_floor = destination_floor; relocate(); }
+
+    /**
+     * @return the next item in the tube, or null if it is empty
+     */
+    public MailItem getTube() { return tubeCount == 0 ? null : tube[0]; }
+
+    public boolean tubeFull() { return tubeCount == tube.length; }
 
-    public MailItem getTube() { return tube; }
+    public int getTubeCapacity() { return tube.length; }
 
-    public boolean isEmpty() { return (deliveryItem == null && tube == null); }
+    public boolean isEmpty() { return (deliveryItem == null && tubeCount == 0); }
 
     public boolean handsFull() { return deliveryItem != null; }
 
     //Check if the mail item is in hands
-    public boolean itemIsInHands(String id) {
-        if (deliveryItem.getId().equals(id)){
+    public boolean itemIsInHands(int id) {
+        if (deliveryItem.getId() == id){
             return true;
         }
         else {
@@ -86,13 +130,13 @@ public class Robot {
         }
     }
 
-    public boolean itemIsInTube(String id) {
-        if (tube.getId().equals(id)){
-            return true;
-        }
-        else {
-            return false;
+    public boolean itemIsInTube(int id) {
+        for (int i = 0; i < tubeCount; i++) {
+            if (tube[i].getId() == id){
+                return true;
+            }
         }
+        return false;
     }
 
     /**
@@ -105,11 +149,12 @@ public class Robot {
     		case RETURNING:
     			/** If its current position is at the mailroom, then the robot should change state */
                 if(current_floor == Building.MAILROOM_LOCATION){
-                    if (tube != null) {
-                        mailPool.addToPool(tube);
-                        System.out.printf("T: %3d >  +addToPool [%s]%n", Clock.Time(), tube.toString());
-                        tube = null;
+                    while (tubeCount > 0) {
+                        MailItem mailItem = takeFromTube();
+                        mailPool.addToPool(mailItem);
+                        context.trace.mailReturned(context.clock.Time(), mailItem);
                     }
+                    relocate();
         			/** Tell the sorter the robot is ready */
         			mailPool.registerWaiting(this);
                 	changeState(RobotState.WAITING);
@@ -123,6 +168,7 @@ public class Robot {
                 if(!isEmpty() && receivedDispatch){
                     receivedDispatch = false;
                     deliveryCounter = 0; // reset delivery counter
+                    planSweep();
                     handlePreDelivery();
                 }
                 break;
@@ -135,8 +181,10 @@ public class Robot {
                     }
                     else{
                         /** If there is another item, set the robot's route to the location to deliver the item */
-                        deliveryItem = tube;
-                        tube = null;
+                        if (deliveryItem == null && tubeCount > 0) {
+                            deliveryItem = takeFromTube();
+                        }
+                        relocate();
                         setRoute();
                         changeState(RobotState.DELIVERING);
                     }
@@ -146,6 +194,44 @@ public class Robot {
     			}
                 break;
     	}
+    	if (context.reservations != null) {
+    	    holdFloor();
+    	}
+    }
+
+    /**
+     * Counts the following time steps in which this robot will do nothing but move one floor towards where
+     * it is going. Those steps do not depend on or affect anything else, so they can be skipped with {@link #skip(int)}.
+     * @return the number of steps which only move the robot, or Integer.MAX_VALUE if it is waiting for the mail pool
+     */
+    public int quietSteps() {
+        switch(current_state) {
+            case RETURNING:
+                return unobstructedMoves(Math.abs(current_floor - Building.MAILROOM_LOCATION));
+            case DELIVERING:
+                return unobstructedMoves(Math.abs(current_floor - destination_floor));
+            default:
+                return (!isEmpty() && receivedDispatch) ? 0 : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @param distance the number of floors the robot still has to travel
+     * @return how many of those floors it is certain to move without being held up
+     */
+    protected int unobstructedMoves(int distance) {
+        return distance;
+    }
+
+    /**
+     * Performs several steps at once, all of which must be quiet
+     * @param steps the number of steps to skip, no more than {@link #quietSteps()}
+     */
+    public void skip(int steps) {
+        if (current_state == RobotState.WAITING) return;
+        int target = current_state == RobotState.RETURNING ? Building.MAILROOM_LOCATION : destination_floor;
+        current_floor += current_floor < target ? steps : -steps;
+        relocate();
     }
 
     /**
@@ -158,12 +244,57 @@ public class Robot {
         /** Delivery complete, report this to the simulator! */
         delivery.deliver(deliveryItem);
         deliveryItem = null;
+        relocate();
         deliveryCounter++;
-        if(deliveryCounter > 2){  // Implies a simulation bug
+        if(deliveryCounter > tube.length + 1){  // Implies a simulation bug
             throw new ExcessiveDeliveryException();
         }
     }
 
+    /**
+     * Orders the tube so that the whole load is delivered in one sweep: up the building from the floor of the
+     * item in hand, delivering every item above it on the way, then back down past the items below it on the
+     * way home. A trip costs the round trip to its furthest floor however many items it carries. A caution
+     * robot fits its fragile item into the same sweep as it goes, see {@link SpecialRobot#setRoute()}.
+     */
+    private void planSweep() {
+        if (tubeCount < 2) return;
+        int start = deliveryItem == null ? Building.MAILROOM_LOCATION : deliveryItem.getDestFloor();
+        // Few items, so a simple insertion sort on the position of each in the sweep
+        for (int i = 1; i < tubeCount; i++) {
+            MailItem mailItem = tube[i];
+            int j = i;
+            while (j > 0 && sweepsBefore(mailItem, tube[j - 1], start)) {
+                tube[j] = tube[j - 1];
+                j--;
+            }
+            tube[j] = mailItem;
+        }
+    }
+
+    /**
+     * @return whether a is reached before b in a sweep up from the start floor and back down
+     */
+    private static boolean sweepsBefore(MailItem a, MailItem b, int start) {
+        int floorA = a.getDestFloor();
+        int floorB = b.getDestFloor();
+        boolean upA = floorA >= start;
+        boolean upB = floorB >= start;
+        if (upA != upB) return upA;
+        return upA ? floorA < floorB : floorA > floorB;
+    }
+
+    /**
+     * Removes the next item from the tube
+     */
+    private MailItem takeFromTube() {
+        MailItem mailItem = tube[0];
+        tubeCount--;
+        System.arraycopy(tube, 1, tube, 0, tubeCount);
+        tube[tubeCount] = null;
+        return mailItem;
+    }
+
     /**
      * Planning for delivery
      * Handles things required before a delivery
@@ -179,6 +310,7 @@ public class Robot {
     protected void setRoute() {
         /** Set the destination floor */
         destination_floor = deliveryItem.getDestFloor();
+        relocate();
     }
 
     /**
@@ -186,15 +318,157 @@ public class Robot {
      * @param destination the floor towards which the robot is moving
      */
     protected void moveTowards(int destination) {
+        if (!claimMove(destination)) return;
         if(current_floor < destination){
             current_floor++;
         } else {
             current_floor--;
         }
+        relocate();
     }
     
-    protected String getIdTube() {
-    	return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
+    /**
+     * Makes sure the robot holds the floor it is about to move onto in the shaft, reserving as much of the
+     * way to its destination as is free if it holds nothing yet
+     * @return whether the robot may move, or must wait where it is for the floor to clear
+     */
+    protected final boolean claimMove(int destination) {
+        ReservationTable reservations = context.reservations;
+        if (reservations == null) return true;
+        int now = context.clock.Time();
+        if (reservedUntil <= now) {
+            boolean down = destination < current_floor;
+            int step = down ? -1 : 1;
+            int time = now;
+            for (int floor = current_floor; floor != destination && reservations.reserve(time + 1, floor + step, down); floor += step) {
+                time++;
+            }
+            if (time > now) {
+                reservedUntil = time;
+                reservedDown = down;
+            }
+        }
+        if (reservedUntil > now) return true;
+        reservations.waited();
+        return false;
+    }
+
+    /**
+     * Gives up the rest of the path the robot reserved, when it is kept from moving for some other reason
+     */
+    protected final void releaseReservations() {
+        ReservationTable reservations = context.reservations;
+        if (reservations == null) return;
+        int now = context.clock.Time();
+        int step = reservedDown ? -1 : 1;
+        int floor = current_floor;
+        for (int time = now + 1; time <= reservedUntil; time++) {
+            floor += step;
+            reservations.release(time, floor, reservedDown);
+        }
+        reservedUntil = Math.min(reservedUntil, now);
+    }
+
+    /**
+     * Keeps the robot's place in the shaft for the next time step if it has not moved along a reserved path
+     */
+    private void holdFloor() {
+        int now = context.clock.Time();
+        if (reservedUntil <= now) {
+            context.reservations.occupy(now + 1, current_floor, reservedDown);
+        }
+    }
+
+    /**
+     * @return whether the robot is on its way to deliver a fragile item, or stopped to deliver it
+     */
+    protected boolean deliversFragile() {
+        return false;
+    }
+
+    /**
+     * Starts keeping the manager's floor index up to date with this robot
+     */
+    void manage(RobotManager manager) {
+        this.manager = manager;
+        relocate();
+    }
+
+    /**
+     * Brings the robot's entry in the floor index up to date, must be called after anything which changes
+     * where the robot is, where it is going or what it is carrying
+     */
+    final void relocate() {
+        if (manager == null) return;
+        int floor = current_floor == destination_floor ? current_floor : -1;
+        boolean fragile = floor >= 0 && deliversFragile();
+        if (floor != parkedFloor || fragile != parkedFragile) {
+            manager.relocate(parkedFloor, parkedFragile, floor, fragile);
+            parkedFloor = floor;
+            parkedFragile = fragile;
+        }
+    }
+
+    public int getId() {
+    	return id;
+    }
+
+    /**
+     * Writes everything about the robot which changes as the simulation runs, for a snapshot of it
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeByte(current_state.ordinal());
+        out.writeInt(current_floor);
+        out.writeInt(destination_floor);
+        out.writeBoolean(receivedDispatch);
+        out.writeInt(deliveryCounter);
+        SimulationSnapshot.writeMail(out, deliveryItem);
+        out.writeInt(tubeCount);
+        for (int i = 0; i < tubeCount; i++) {
+            SimulationSnapshot.writeMail(out, tube[i]);
+        }
+        out.writeInt(reservedUntil);
+        out.writeBoolean(reservedDown);
+    }
+
+    /**
+     * Puts the robot back in the state written by {@link #writeState(DataOutput)}
+     * @throws IOException if the state cannot be read or does not fit this robot
+     */
+    void readState(DataInput in) throws IOException {
+        current_state = RobotState.values()[in.readUnsignedByte()];
+        current_floor = in.readInt();
+        destination_floor = in.readInt();
+        receivedDispatch = in.readBoolean();
+        deliveryCounter = in.readInt();
+        deliveryItem = SimulationSnapshot.readMail(in);
+        int count = in.readInt();
+        if (count < 0 || count > tube.length) {
+            throw new IOException("Snapshot has " + count + " items in the tube of robot " + id + ", which holds " + tube.length);
+        }
+        Arrays.fill(tube, null);
+        for (tubeCount = 0; tubeCount < count; tubeCount++) {
+            tube[tubeCount] = SimulationSnapshot.readMail(in);
+        }
+        reservedUntil = in.readInt();
+        reservedDown = in.readBoolean();
+        // The reservations of the path ahead are the only ones still to be used, so are all the table needs back
+        if (context.reservations != null) {
+            int step = reservedDown ? -1 : 1;
+            int floor = current_floor;
+            for (int time = context.clock.Time() + 1; time <= reservedUntil; time++) {
+                floor += step;
+                context.reservations.occupy(time, floor, reservedDown);
+            }
+        }
+        relocate();
+    }
+
+    /**
+     * @return the number of items in the tube
+     */
+    public int getTubeCount() {
+    	return tubeCount;
     }
     
     /**
@@ -202,9 +476,10 @@ public class Robot {
      * @param nextState the state to which the robot is transitioning
      */
     private void changeState(RobotState nextState){
-    	assert(!(deliveryItem == null && tube != null));
+    	assert(!(deliveryItem == null && tubeCount > 0));
     	if (current_state != nextState) {
-            System.out.printf("T: %3d > %7s changed from %s to %s%n", Clock.Time(), getIdTube(), current_state, nextState);
+            context.trace.stateChanged(context.clock.Time(), id, getTubeCount(), current_state, nextState);
+            context.metrics.robotStateChanged(context.clock.Time(), id, current_state, nextState);
     	}
     	current_state = nextState;
     	if(nextState == RobotState.DELIVERING){
@@ -217,32 +492,28 @@ public class Robot {
      */
     public void printDelivery() {
         if (this.getDeliveryItem() != null){
-            System.out.printf("T: %3d > %9s-> [%s]%n", Clock.Time(), getIdTube(), deliveryItem.toString());
+            context.trace.robotDelivering(context.clock.Time(), id, getTubeCount(), deliveryItem);
         }
     }
     
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return id;
 	}
 
 	public void addToHand(MailItem mailItem) throws ItemTooHeavyException, BreakingFragileItemException {
 		assert(deliveryItem == null);
 		if(mailItem.getFragile()) throw new BreakingFragileItemException();
 		deliveryItem = mailItem;
+		relocate();
 		if (deliveryItem.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
 	}
 
 	public void addToTube(MailItem mailItem) throws ItemTooHeavyException, BreakingFragileItemException {
-		assert(tube == null);
+		assert(!tubeFull());
 		if(mailItem.getFragile()) throw new BreakingFragileItemException();
-		tube = mailItem;
-		if (tube.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+		tube[tubeCount++] = mailItem;
+		relocate();
+		if (mailItem.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
         }
 }
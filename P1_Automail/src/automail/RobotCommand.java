@@ -0,0 +1,27 @@
+package automail;
+
+/**
+ * What a physical robot is told at the end of a time step in real-time mode: where the simulated robot now
+ * is, where it is heading and what it is doing, for the robot to carry out and acknowledge
+ */
+public final class RobotCommand {
+
+    public final int robot;
+    public final int time;
+    public final int floor;
+    public final int destination;
+    public final Robot.RobotState state;
+
+    public RobotCommand(int robot, int time, int floor, int destination, Robot.RobotState state) {
+        this.robot = robot;
+        this.time = time;
+        this.floor = floor;
+        this.destination = destination;
+        this.state = state;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("R%d T: %d floor %d -> %d %s", robot, time, floor, destination, state);
+    }
+}
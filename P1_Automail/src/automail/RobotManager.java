@@ -1,29 +1,36 @@
 package automail;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 /**
- * Singleton class to manage robots and keep track of their location
+ * Manages the robots of one simulation and keeps track of their location
  */
 public class RobotManager {
 
-    private static RobotManager instance;
-    public static RobotManager getInstance() {
-        if (instance == null) {
-            instance = new RobotManager();
-        }
-        return instance;
-    }
-
     private LinkedList<Robot> robots;
+    /** The same robots in the same order, for stepping them without copying the list */
+    private Robot[] robotArray = new Robot[0];
+
+    /**
+     * Per floor, the number of robots stopped there to deliver, i.e. with that floor as both their current and
+     * destination floor, and how many of those are special robots delivering a fragile item.
+     * Robots keep these up to date themselves as they move and load, through {@link Robot#relocate()}.
+     */
+    private int[] parked;
+    private int[] fragileParked;
 
-    private RobotManager(){
+    RobotManager(int floors){
         this.robots = new LinkedList<>();
+        this.parked = new int[floors + 1];
+        this.fragileParked = new int[floors + 1];
     }
 
     public void addRobots(Robot[] robots) {
         for (Robot robot : robots) {
             this.robots.add(robot);
+            robot.manage(this);
         }
+        robotArray = this.robots.toArray(new Robot[0]);
     }
 
     // get all robots
@@ -31,4 +38,43 @@ public class RobotManager {
         return (LinkedList<Robot>) robots.clone();
     }
 
+    /**
+     * @return the robots in order of id, an array shared with the manager which must not be modified
+     */
+    public Robot[] getRobotArray() {
+        return robotArray;
+    }
+
+    /**
+     * @return whether any robot is stopped at the floor to deliver
+     */
+    public boolean isParkedAt(int floor) {
+        return floor >= 0 && floor < parked.length && parked[floor] > 0;
+    }
+
+    /**
+     * @return whether a special robot is stopped at the floor to deliver its fragile item
+     */
+    public boolean isDeliveringFragileAt(int floor) {
+        return floor >= 0 && floor < fragileParked.length && fragileParked[floor] > 0;
+    }
+
+    /**
+     * Moves a robot's entry in the index, floors being -1 when it was or is not parked anywhere
+     */
+    void relocate(int fromFloor, boolean fromFragile, int toFloor, boolean toFragile) {
+        if (fromFloor >= 0) {
+            parked[fromFloor]--;
+            if (fromFragile) fragileParked[fromFloor]--;
+        }
+        if (toFloor >= 0) {
+            if (toFloor >= parked.length) {
+                parked = Arrays.copyOf(parked, toFloor + 1);
+                fragileParked = Arrays.copyOf(fragileParked, toFloor + 1);
+            }
+            parked[toFloor]++;
+            if (toFragile) fragileParked[toFloor]++;
+        }
+    }
+
 }
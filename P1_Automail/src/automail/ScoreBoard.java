@@ -0,0 +1,120 @@
+package automail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The score of a run so far, kept up to date as each delivery is made so it can be read at any time step
+ * without going back over the deliveries: in total, by destination floor and by whether the mail was fragile.
+ * Each delivery is scored by the run's {@link IScoringFunction}.
+ */
+public class ScoreBoard {
+
+    private final IScoringFunction scoring;
+
+    private double total = 0;
+    /** Indexed by floor, from Building.LOWEST_FLOOR */
+    private final double[] floorScores;
+    private final int[] floorCounts;
+    /** Indexed 0 for normal mail and 1 for fragile */
+    private final double[] fragilityScores = new double[2];
+    private final int[] fragilityCounts = new int[2];
+
+    /**
+     * @param floors the number of floors in the building
+     */
+    public ScoreBoard(IScoringFunction scoring, int floors) {
+        this.scoring = scoring;
+        floorScores = new double[floors];
+        floorCounts = new int[floors];
+    }
+
+    /**
+     * Scores the delivery of the item and adds it to the totals
+     * @return the score of the delivery
+     */
+    public double record(int time, MailItem mailItem) {
+        double score = scoring.score(time - mailItem.getArrivalTime(), mailItem);
+        total += score;
+        int floor = mailItem.getDestFloor() - Building.LOWEST_FLOOR;
+        floorScores[floor] += score;
+        floorCounts[floor]++;
+        int fragility = mailItem.getFragile() ? 1 : 0;
+        fragilityScores[fragility] += score;
+        fragilityCounts[fragility]++;
+        return score;
+    }
+
+    /**
+     * @return the score of all deliveries so far, lower is better
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the score of the deliveries to the floor so far
+     */
+    public double getFloorScore(int floor) {
+        return floorScores[floor - Building.LOWEST_FLOOR];
+    }
+
+    /**
+     * @return the number of deliveries to the floor so far
+     */
+    public int getFloorCount(int floor) {
+        return floorCounts[floor - Building.LOWEST_FLOOR];
+    }
+
+    /**
+     * @return the score of the deliveries of fragile, or else normal, mail so far
+     */
+    public double getFragilityScore(boolean fragile) {
+        return fragilityScores[fragile ? 1 : 0];
+    }
+
+    /**
+     * @return the number of deliveries of fragile, or else normal, mail so far
+     */
+    public int getFragilityCount(boolean fragile) {
+        return fragilityCounts[fragile ? 1 : 0];
+    }
+
+    /**
+     * Writes the totals to a snapshot: the total score, then the score and count of each floor, then those of
+     * normal and of fragile mail
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeDouble(total);
+        out.writeInt(floorScores.length);
+        for (int floor = 0; floor < floorScores.length; floor++) {
+            out.writeDouble(floorScores[floor]);
+            out.writeInt(floorCounts[floor]);
+        }
+        for (int fragility = 0; fragility < 2; fragility++) {
+            out.writeDouble(fragilityScores[fragility]);
+            out.writeInt(fragilityCounts[fragility]);
+        }
+    }
+
+    /**
+     * Reads back the totals written by {@link #writeState(DataOutput)}
+     * @throws IOException if they were written for a building with a different number of floors
+     */
+    void readState(DataInput in) throws IOException {
+        total = in.readDouble();
+        int floors = in.readInt();
+        if (floors != floorScores.length) {
+            throw new IOException("Snapshot was saved with " + floors + " floors");
+        }
+        for (int floor = 0; floor < floors; floor++) {
+            floorScores[floor] = in.readDouble();
+            floorCounts[floor] = in.readInt();
+        }
+        for (int fragility = 0; fragility < 2; fragility++) {
+            fragilityScores[fragility] = in.readDouble();
+            fragilityCounts[fragility] = in.readInt();
+        }
+    }
+}
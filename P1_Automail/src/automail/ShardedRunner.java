@@ -0,0 +1,269 @@
+package automail;
+
+import exceptions.BreakingFragileItemException;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the simulations of many buildings at once in one JVM. Each building is a separate simulation with its
+ * own clock, mail pool, robots and delivery sink. Buildings are shared out between a fixed number of worker
+ * threads, and each building stays on its worker for the whole run. A worker takes its buildings forward in
+ * turn, a slice of time at a time, and after each slice reports the building's progress. The progress of
+ * every building, and of the campus as a whole, is printed as the reports come in.
+ *
+ * Usage: ShardedRunner buildings [workers] [report interval]
+ * Building i runs with seed Seed + i. Any property can be set for one building alone by prefixing it with
+ * Building.i. as in Building.3.Floors=40. The workers default to the number of processors and the report
+ * interval to 100 time steps.
+ */
+public class ShardedRunner {
+
+    /** How long to wait for a report before checking whether any worker has stopped */
+    private static final long REPORT_WAIT_MS = 1000;
+
+    /** The progress of one building at one point in its run */
+    public static class Snapshot {
+        public final int building;
+        public final int time;
+        public final int delivered;
+        public final int mailCount;
+        public final double score;
+        public final boolean complete;
+        /** Why the building could not complete, or null if it has not failed */
+        public final Throwable failure;
+
+        Snapshot(int building, int time, int delivered, int mailCount, double score, boolean complete, Throwable failure) {
+            this.building = building;
+            this.time = time;
+            this.delivered = delivered;
+            this.mailCount = mailCount;
+            this.score = score;
+            this.complete = complete;
+            this.failure = failure;
+        }
+
+        /** Whether the building has finished, one way or the other */
+        boolean isFinal() {
+            return complete || failure != null;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: ShardedRunner buildings [workers] [report interval]");
+            return;
+        }
+        Properties automailProperties = Simulation.loadProperties();
+        int buildings = Integer.parseInt(args[0]);
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int interval = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.printf("Buildings: %d on %d workers%n", buildings, workers);
+        run(automailProperties, buildings, workers, interval, System.out);
+    }
+
+    /**
+     * Runs every building to completion, printing each report as it arrives and the campus totals after
+     * every round of reports
+     * @param automailProperties the configuration shared by every building, overridden by Building.i. properties
+     * @param workers the number of threads the buildings are shared between
+     * @param interval the number of time steps each building runs between reports
+     * @return the final snapshot of each building
+     */
+    public static Snapshot[] run(Properties automailProperties, int buildings, int workers, int interval, PrintStream out)
+            throws InterruptedException {
+        BlockingQueue<Snapshot> reports = new LinkedBlockingQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> shards = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                List<Integer> shard = new ArrayList<>();
+                for (int b = w; b < buildings; b += workers) {
+                    shard.add(b);
+                }
+                shards.add(pool.submit(() -> runShard(automailProperties, shard, interval, reports)));
+            }
+
+            Snapshot[] latest = new Snapshot[buildings];
+            int finished = 0;
+            int sinceTotals = 0;
+            while (finished < buildings) {
+                Snapshot snapshot = reports.poll(REPORT_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (snapshot == null) {
+                    snapshot = workerStopped(shards, latest, reports);
+                    if (snapshot == null) continue;
+                }
+                latest[snapshot.building] = snapshot;
+                if (snapshot.isFinal()) finished++;
+                printSnapshot(snapshot, out);
+                if (++sinceTotals >= buildings || finished == buildings) {
+                    printTotals(latest, out);
+                    sinceTotals = 0;
+                }
+            }
+            return latest;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Looks for a building left without a final report by a worker that has stopped, as it would be if the
+     * worker died of something it did not catch
+     * @return a failed final snapshot for the first such building, or null if every worker is still running or
+     * has more reports on the way
+     */
+    private static Snapshot workerStopped(List<Future<?>> shards, Snapshot[] latest, BlockingQueue<Snapshot> reports)
+            throws InterruptedException {
+        for (int building = 0; building < latest.length; building++) {
+            if (latest[building] != null && latest[building].isFinal()) continue;
+            Future<?> shard = shards.get(building % shards.size());
+            if (!shard.isDone() || !reports.isEmpty()) continue;
+            Throwable failure;
+            try {
+                shard.get();
+                failure = new IllegalStateException("Worker stopped without a final report");
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            }
+            Snapshot last = latest[building];
+            return last == null
+                    ? new Snapshot(building, 0, 0, 0, 0, false, failure)
+                    : new Snapshot(building, last.time, last.delivered, last.mailCount, last.score, false, failure);
+        }
+        return null;
+    }
+
+    /**
+     * The work of one worker: creates its buildings' simulations, then takes each forward by a slice of time
+     * in turn until they have all finished
+     */
+    private static void runShard(Properties automailProperties, List<Integer> shard, int interval, BlockingQueue<Snapshot> reports) {
+        List<Simulation> simulations = new ArrayList<>();
+        List<Integer> buildings = new ArrayList<>();
+        try {
+            for (int building : shard) {
+                Simulation simulation = null;
+                try {
+                    simulation = new Simulation(buildingProperties(automailProperties, building),
+                            new PrintTraceSink(ITraceSink.Level.OFF, System.out));
+                    simulations.add(simulation);
+                    buildings.add(building);
+                    simulation.start();
+                } catch (IOException|ReflectiveOperationException|RuntimeException e) {
+                    if (simulation != null) {
+                        simulations.remove(simulations.size() - 1);
+                        buildings.remove(buildings.size() - 1);
+                    }
+                    reports.add(new Snapshot(building, 0, 0, 0, 0, false, close(simulation, e)));
+                }
+            }
+            while (!simulations.isEmpty()) {
+                for (int i = 0; i < simulations.size(); i++) {
+                    Simulation simulation = simulations.get(i);
+                    int building = buildings.get(i);
+                    Throwable failure = null;
+                    try {
+                        int until = simulation.getTime() + interval;
+                        while (!simulation.isComplete() && simulation.getTime() < until) {
+                            simulation.step();
+                        }
+                    } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException|RuntimeException e) {
+                        failure = e;
+                    }
+                    boolean complete = simulation.isComplete();
+                    if (complete || failure != null) {
+                        simulations.remove(i);
+                        buildings.remove(i);
+                        i--;
+                        failure = close(simulation, failure);
+                    }
+                    reports.add(new Snapshot(building, simulation.getTime(), simulation.getDeliveredCount(),
+                            simulation.getMailCount(), simulation.getTotalScore(), complete, failure));
+                }
+            }
+        } finally {
+            for (Simulation simulation : simulations) {
+                close(simulation, null);
+            }
+        }
+    }
+
+    /**
+     * Closes a building's simulation, if it was created, once it has finished or failed
+     * @return the failure, with any from closing the simulation added to it, or the one from closing if it had
+     * not failed
+     */
+    private static Throwable close(Simulation simulation, Throwable failure) {
+        if (simulation == null) return failure;
+        try {
+            simulation.close();
+        } catch (IOException|RuntimeException e) {
+            if (failure == null) return e;
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    /**
+     * @return the shared properties with the building's own on top, and its seed
+     */
+    static Properties buildingProperties(Properties automailProperties, int building) {
+        Properties properties = new Properties();
+        properties.putAll(automailProperties);
+        int seed = Integer.parseInt(automailProperties.getProperty("Seed", "0")) + building;
+        properties.setProperty("Seed", Integer.toString(seed));
+        String prefix = "Building." + building + ".";
+        for (String name : automailProperties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                properties.setProperty(name.substring(prefix.length()), automailProperties.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    private static void printSnapshot(Snapshot snapshot, PrintStream out) {
+        if (snapshot.failure != null) {
+            out.printf("Building %d unable to complete at T: %d: %s%n", snapshot.building, snapshot.time, snapshot.failure);
+        } else {
+            out.printf("Building %d T: %d | delivered %d/%d | score %.2f%s%n", snapshot.building, snapshot.time,
+                    snapshot.delivered, snapshot.mailCount, snapshot.score, snapshot.complete ? " | complete" : "");
+        }
+    }
+
+    /**
+     * Prints the progress of all the buildings together, from the latest report of each
+     */
+    private static void printTotals(Snapshot[] latest, PrintStream out) {
+        int complete = 0;
+        int failed = 0;
+        long delivered = 0;
+        long mailCount = 0;
+        double score = 0;
+        int time = 0;
+        for (Snapshot snapshot : latest) {
+            if (snapshot == null) continue;
+            if (snapshot.complete) complete++;
+            if (snapshot.failure != null) failed++;
+            delivered += snapshot.delivered;
+            mailCount += snapshot.mailCount;
+            score += snapshot.score;
+            time = Math.max(time, snapshot.time);
+        }
+        out.printf("Campus T: %d | buildings %d/%d complete, %d failed | delivered %d/%d | score %.2f%n",
+                time, complete, latest.length, failed, delivered, mailCount, score);
+    }
+}
@@ -3,12 +3,24 @@ package automail;
 import exceptions.*;
 import strategies.Automail;
 import strategies.IMailPool;
-import strategies.MailPool;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -17,34 +29,115 @@ import java.util.Properties;
 public class Simulation {
 
     /** Constant for the mail generator */
-    private static int MAIL_TO_CREATE;
-    private static int MAIL_MAX_WEIGHT;
-    
-    private static boolean CAUTION_ENABLED;
-    private static boolean FRAGILE_ENABLED;
-    private static boolean STATISTICS_ENABLED;
-    
-    private static ArrayList<MailItem> MAIL_DELIVERED;
-    private static double total_score = 0;
+    private final int MAIL_TO_CREATE;
+    private final int MAIL_MAX_WEIGHT;
+
+    private final boolean CAUTION_ENABLED;
+    private final boolean FRAGILE_ENABLED;
+    private final boolean STATISTICS_ENABLED;
+    /** Jump the clock over time steps in which nothing but robot movement happens */
+    private final boolean EVENT_ENGINE;
+    /** Make the mail as it arrives, this many items at a time, rather than all up front; 0 for all up front */
+    private final int MAIL_STREAM_WINDOW;
+    /** Make all the mail up front, but hold it as primitives until it arrives */
+    private final boolean MAIL_ARRAYS;
+
+    /** Everything belonging to this run, so that several simulations can run side by side */
+    private final SimulationContext context;
+    private final Automail automail;
+    /** Makes the mail, or null when the mail comes from an arrival trace */
+    private final MailGenerator mailGenerator;
+    private final IMailSource mailSource;
+    /** Where to record the generated arrivals, if anywhere */
+    private final String RECORD_ARRIVALS;
+    /** Measures the run, or null if it is not being measured */
+    private final MetricsRecorder metrics;
+    /** The format to write the measurements in, csv or json, and where to */
+    private final String METRICS_FORMAT;
+    private final String METRICS_FILE;
+    /** Publishes the measurements to the Event_Subscribers off the simulation's thread, or null if there are none */
+    private final EventBus events;
+    /** The snapshot to carry on from, if any, and when and where to save one during the run, if at all */
+    private final String RESTORE;
+    private final int SNAPSHOT_AT;
+    private final String SNAPSHOT_FILE;
+    /** Paces the run to the wall clock and keeps the robots told where they are, or null to run flat out */
+    private final RealTimePacer pacer;
+    private boolean started = false;
+    private boolean snapshotSaved = false;
+    private boolean finished = false;
+    private boolean eventsReported = false;
+
+    /** The mail items delivered so far, indexed by their id, which are handed out from 0 */
+    private final BitSet MAIL_DELIVERED;
+    private int mail_delivered_count = 0;
+    /** The score so far, in total and broken down, from the Scoring property */
+    private final ScoreBoard scores;
 
     // Variables to be printed
-	private static int normal_packs = 0;
-	private static int caution_packs = 0;
-	private static int normal_weight = 0;
-	private static int caution_weight = 0;
-	private static int wrapping_time = 0;
+	private int normal_packs = 0;
+	private int caution_packs = 0;
+	private int normal_weight = 0;
+	private int caution_weight = 0;
+	private int wrapping_time = 0;
+
+	public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException,
+			NoSuchMethodException, InvocationTargetException {
+    	Properties automailProperties = loadProperties();
+
+        /** Read the first argument and save it as a seed if it exists, it overrides the property */
+        if (args.length > 0) {
+        	automailProperties.setProperty("Seed", args[0]);
+        }
+
+        ITraceSink trace = createTraceSink(automailProperties);
+        Simulation simulation = new Simulation(automailProperties, trace);
+        try {
+            simulation.run();
+        } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
+            simulation.close();
+            e.printStackTrace();
+            System.out.println("Simulation unable to complete.");
+            System.exit(0);
+        }
+        simulation.printResults();
+        simulation.writeMetrics();
+        simulation.close();
+    }
+
+    /**
+     * Traces to standard output at the level of the Trace property: off, summary or full.
+     * The full trace is written from a background thread so it does not slow the simulation down.
+     */
+    static ITraceSink createTraceSink(Properties automailProperties) {
+        ITraceSink.Level level = ITraceSink.Level.valueOf(automailProperties.getProperty("Trace").toUpperCase());
+        if (level == ITraceSink.Level.FULL) {
+            return new AsyncTraceSink(new FileOutputStream(FileDescriptor.out).getChannel());
+        }
+        return new PrintTraceSink(level, System.out);
+    }
 
-	public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
+    /**
+     * Reads automail.properties from the working directory on top of the default properties
+     */
+    static Properties loadProperties() throws IOException {
     	Properties automailProperties = new Properties();
 		// Default properties
     	automailProperties.setProperty("Robots", "Standard");
-    	automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
+    	automailProperties.setProperty("MailPool", "strategies.MailPool");
     	automailProperties.setProperty("Floors", "10");
     	automailProperties.setProperty("Mail_to_Create", "80");
     	automailProperties.setProperty("Last_Delivery_Time", "100");
     	automailProperties.setProperty("Caution", "true");
     	automailProperties.setProperty("Fragile", "false");
     	automailProperties.setProperty("Statistics", "false");
+    	automailProperties.setProperty("Engine", "tick");
+    	automailProperties.setProperty("Generator", "eager");
+    	automailProperties.setProperty("Stream_Window", "65536");
+    	automailProperties.setProperty("Tube_Capacity", "1");
+    	automailProperties.setProperty("Metrics", "off");
+    	automailProperties.setProperty("Scoring", "automail.DelayScoring");
+    	automailProperties.setProperty("Trace", "full");
 
     	// Read properties
 		FileReader inStream = null;
@@ -56,87 +149,401 @@ public class Simulation {
 	                inStream.close();
 	            }
 		}
+		return automailProperties;
+    }
+
+    /**
+     * Sets up a simulation, with its own building, clock, robots and mail
+     * @param automailProperties the configuration, with an optional Seed
+     * @param trace where the progress of the simulation is traced
+     */
+    public Simulation(Properties automailProperties, ITraceSink trace) throws IOException, InstantiationException, IllegalAccessException,
+            ClassNotFoundException, NoSuchMethodException, InvocationTargetException {
+        this(SimulationConfig.fromProperties(automailProperties), trace);
+    }
 
-		//Seed
-		String seedProp = automailProperties.getProperty("Seed");
+    /**
+     * Sets up a simulation from a configuration made in code, without reading any properties
+     * @param trace where the progress of the simulation is traced
+     */
+    public Simulation(SimulationConfig config, ITraceSink trace) throws IOException, InstantiationException, IllegalAccessException,
+            ClassNotFoundException, NoSuchMethodException, InvocationTargetException {
 		// Floors
-		Building.FLOORS = Integer.parseInt(automailProperties.getProperty("Floors"));
-        System.out.println("Floors: " + Building.FLOORS);
+		Building building = new Building(config.floors);
+        trace.summary("Floors: " + building.FLOORS);
 		// Mail_to_Create
-		MAIL_TO_CREATE = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
-        System.out.println("Mail_to_Create: " + MAIL_TO_CREATE);
+		MAIL_TO_CREATE = config.mailToCreate;
+        trace.summary("Mail_to_Create: " + MAIL_TO_CREATE);
         // Mail_to_Create
-     	MAIL_MAX_WEIGHT = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
-        System.out.println("Mail_Max_Weight: " + MAIL_MAX_WEIGHT);
+     	MAIL_MAX_WEIGHT = config.mailMaxWeight;
+        trace.summary("Mail_Max_Weight: " + MAIL_MAX_WEIGHT);
 		// Last_Delivery_Time
-		Clock.LAST_DELIVERY_TIME = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
-        System.out.println("Last_Delivery_Time: " + Clock.LAST_DELIVERY_TIME);
+		Clock clock = new Clock(config.lastDeliveryTime);
+        trace.summary("Last_Delivery_Time: " + clock.LAST_DELIVERY_TIME);
         // Caution ability
-        CAUTION_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Caution"));
-        System.out.println("Caution enabled: " + CAUTION_ENABLED);
+        CAUTION_ENABLED = config.caution;
+        trace.summary("Caution enabled: " + CAUTION_ENABLED);
         // Fragile mail generation
-        FRAGILE_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
-        System.out.println("Fragile enabled: " + FRAGILE_ENABLED);
+        FRAGILE_ENABLED = config.fragile;
+        trace.summary("Fragile enabled: " + FRAGILE_ENABLED);
         // Statistics tracking
-        STATISTICS_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Statistics"));
-        System.out.println("Statistics enabled: " + STATISTICS_ENABLED);
+        STATISTICS_ENABLED = config.statistics;
+        trace.summary("Statistics enabled: " + STATISTICS_ENABLED);
+        // Engine, either "tick" to step every time step or "event" to skip those where nothing happens
+        // A run paced to the wall clock needs every time step, so always takes them one at a time, as does one
+        // modelling the shaft, where robots moving between floors hold each other up
+        EVENT_ENGINE = config.engine.equals("event") && config.tickPeriod <= 0 && config.shaftCapacity <= 0;
+        // Mail generation, either "eager" to make all the mail before starting, "arrays" to do the same in less
+        // memory or "stream" to make it as needed
+        MAIL_STREAM_WINDOW = config.generator.equals("stream") ? config.streamWindow : 0;
+        MAIL_ARRAYS = config.generator.equals("arrays");
 		// Robots
-		int robots = Integer.parseInt(automailProperties.getProperty("Robots"));
-		System.out.print("Robots: "); System.out.println(robots);
+		int robots = config.robots;
+		trace.summary("Robots: " + robots);
 		assert(robots > 0);
+		// Tube capacity, the number of items each robot carries besides those in its hands
+		int tubeCapacity = config.tubeCapacity;
+		assert(tubeCapacity > 0);
+		// Metrics, off or the format to write them in at the end, csv or json
+		METRICS_FORMAT = config.metrics;
+		METRICS_FILE = config.metricsFile != null ? config.metricsFile : "metrics." + METRICS_FORMAT;
+		metrics = METRICS_FORMAT.equals("off") ? null : new MetricsRecorder(robots);
+		// Wrapping station, the number of fragile items the mail pool wraps at once while they wait, if any
+		if (config.wrappingStation > 0) {
+			trace.summary("Wrapping station: " + config.wrappingStation);
+		}
+		IMetricsSink sink = metrics == null ? IMetricsSink.NONE : metrics;
+		// Event_Subscribers, classes following the run through the event bus, each as a batch of events comes in
+		if (config.eventSubscribers != null && !config.eventSubscribers.trim().isEmpty()) {
+			String[] names = config.eventSubscribers.split(",");
+			IEventSubscriber[] subscribers = new IEventSubscriber[names.length];
+			for (int i = 0; i < names.length; i++) {
+				subscribers[i] = (IEventSubscriber) Class.forName(names[i].trim()).getConstructor().newInstance();
+			}
+			events = new EventBus(subscribers, config.eventBuffer, config.eventBatch, sink);
+			sink = events;
+		} else {
+			events = null;
+		}
+		// Shaft capacity, the most robots on either side of the shaft at a floor, if robots can hold each other up
+		if (config.shaftCapacity > 0) {
+			trace.summary("Shaft capacity: " + config.shaftCapacity);
+		}
+		context = new SimulationContext(building, clock, trace, sink, config.wrappingStation, config.shaftCapacity);
 		// MailPool
-		IMailPool mailPool = new MailPool(robots);
+		IMailPool mailPool = (IMailPool) Class.forName(config.mailPool).getConstructor(int.class, SimulationContext.class)
+				.newInstance(robots, context);
+		// Scoring, the class scoring each delivery
+		IScoringFunction scoring = (IScoringFunction) Class.forName(config.scoring).getConstructor().newInstance();
+		scores = new ScoreBoard(scoring, building.FLOORS);
 
 		// End properties
-		
-        MAIL_DELIVERED = new ArrayList<MailItem>();
-                
+
         /** Used to see whether a seed is initialized or not */
         HashMap<Boolean, Integer> seedMap = new HashMap<>();
-        
-        /** Read the first argument and save it as a seed if it exists */
-        if (args.length == 0 ) { // No arg
-        	if (seedProp == null) { // and no property
-        		seedMap.put(false, 0); // so randomise
-        	} else { // Use property seed
-        		seedMap.put(true, Integer.parseInt(seedProp));
-        	}
-        } else { // Use arg seed - overrides property
-        	seedMap.put(true, Integer.parseInt(args[0]));
+        if (config.seed == null) { // No seed
+        	seedMap.put(false, 0); // so randomise
+        } else {
+        	seedMap.put(true, config.seed);
         }
         Integer seed = seedMap.get(true);
-        System.out.println("Seed: " + (seed == null ? "null" : seed.toString()));
-        Automail automail = new Automail(mailPool, new ReportDelivery(), robots, CAUTION_ENABLED);
-        MailGenerator mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, automail.mailPool, seedMap);
-        
+        trace.summary("Seed: " + (seed == null ? "null" : seed.toString()));
+        automail = new Automail(mailPool, new ReportDelivery(), robots, CAUTION_ENABLED, tubeCapacity, context);
+        // Arrivals, a trace to replay the mail from instead of generating it
+        if (config.arrivals == null) {
+            mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, automail.mailPool, seedMap, context);
+            mailSource = mailGenerator;
+        } else {
+            trace.summary("Arrivals: " + config.arrivals);
+            mailGenerator = null;
+            mailSource = new ArrivalTraceReader(Paths.get(config.arrivals), automail.mailPool, context);
+        }
+        RECORD_ARRIVALS = config.recordArrivals;
+        // Snapshots, to branch several runs off from one point in a run
+        RESTORE = config.restore;
+        SNAPSHOT_AT = config.snapshotAt;
+        SNAPSHOT_FILE = config.snapshotFile;
+        MAIL_DELIVERED = new BitSet(mailSource.getMailCount());
+        // Tick_Period, the wall-clock time of a time step when driving robots through Robot_Transport
+        if (config.tickPeriod > 0) {
+            trace.summary("Tick period: " + config.tickPeriod + " ms");
+            IRobotTransport transport = (IRobotTransport) Class.forName(config.robotTransport).getConstructor().newInstance();
+            pacer = new RealTimePacer(Math.round(config.tickPeriod * 1e6), transport);
+        } else {
+            pacer = null;
+        }
+    }
+
+    /**
+     * Runs the simulation until all the mail has been delivered
+     */
+    public void run() throws IOException, ExcessiveDeliveryException, ItemTooHeavyException, BreakingFragileItemException {
+        start();
+        try {
+            if (pacer != null) {
+                runPaced();
+                return;
+            }
+            while(!isComplete()) {
+                saveSnapshotIfDue();
+                step();
+            }
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * Runs the simulation one time step per Tick_Period, telling the robots where to be after each
+     */
+    private void runPaced() throws IOException, ExcessiveDeliveryException, ItemTooHeavyException, BreakingFragileItemException {
+        pacer.begin();
+        while(!isComplete()) {
+            saveSnapshotIfDue();
+            pacer.awaitTick();
+            step();
+            pacer.exchange(context.robotManager.getRobotArray(), context.clock.Time());
+        }
+    }
+
+    /**
+     * Stops the event dispatcher and the pacer once no more time steps are to be run, so everything published
+     * has been handed out before the results are printed. Does nothing the second time.
+     */
+    private void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        if (events != null) {
+            events.close();
+        }
+        if (pacer != null) {
+            pacer.close();
+        }
+    }
+
+    /**
+     * Finishes the simulation, lets the Event_Subscribers add to the results if {@link #printResults()} has not,
+     * and closes the trace. Runs that take the simulation forward with {@link #step()} rather than
+     * {@link #run()} call this when they are done with it, whether or not it completed.
+     */
+    public void close() throws IOException {
+        finish();
+        if (events != null && !eventsReported) {
+            events.report(context.trace);
+            eventsReported = true;
+        }
+        context.trace.close();
+    }
+
+    private void saveSnapshotIfDue() throws IOException {
+        if (SNAPSHOT_AT >= 0 && !snapshotSaved && context.clock.Time() >= SNAPSHOT_AT) {
+            saveSnapshot(Paths.get(SNAPSHOT_FILE));
+            snapshotSaved = true;
+        }
+    }
+
+    /**
+     * Gets the mail ready, and restores the Restore snapshot if there is one, before the first {@link #step()}.
+     * Does nothing if the simulation has already been started.
+     */
+    public void start() throws IOException {
+        if (started) return;
+        started = true;
         /** Initiate all the mail */
-        mailGenerator.generateAllMail(FRAGILE_ENABLED);
-        while(MAIL_DELIVERED.size() != mailGenerator.MAIL_TO_CREATE) {
-            mailGenerator.step();
-            try {
-                automail.mailPool.step();
-				for (Robot robot: RobotManager.getInstance().getRobots()) {
-					robot.step();
-				}
-			} catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
-				e.printStackTrace();
-				System.out.println("Simulation unable to complete.");
-				System.exit(0);
-			}
-            Clock.Tick();
+        if (mailGenerator != null) {
+            if (MAIL_STREAM_WINDOW > 0) {
+                mailGenerator.streamMail(FRAGILE_ENABLED, MAIL_STREAM_WINDOW);
+            } else if (MAIL_ARRAYS) {
+                mailGenerator.generateArrayMail(FRAGILE_ENABLED);
+            } else {
+                mailGenerator.generateAllMail(FRAGILE_ENABLED);
+            }
+            if (RECORD_ARRIVALS != null) {
+                try (ArrivalTraceWriter writer = new ArrivalTraceWriter(Paths.get(RECORD_ARRIVALS))) {
+                    mailGenerator.recordArrivals(writer);
+                }
+            }
+        }
+        if (RESTORE != null) {
+            restoreSnapshot(Paths.get(RESTORE));
         }
-        printResults();
     }
-    
-    static class ReportDelivery implements IMailDelivery {
-    	
+
+    /**
+     * Saves the state of the simulation between two time steps, everything but the mail still to arrive,
+     * which is made again from the seed on restoring. The format is described in {@link SimulationSnapshot}.
+     * Measurements taken by the Metrics property are not saved.
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        Robot[] robots = context.robotManager.getRobotArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(SimulationSnapshot.MAGIC);
+            out.writeInt(SimulationSnapshot.VERSION);
+
+            out.writeInt(robots.length);
+            out.writeInt(robots[0].getTubeCapacity());
+            out.writeBoolean(CAUTION_ENABLED);
+            out.writeByte(mailGenerator != null ? SimulationSnapshot.GENERATED : SimulationSnapshot.REPLAYED);
+            out.writeLong(mailGenerator != null ? mailGenerator.getSeed() : 0);
+            out.writeInt(mailSource.getMailCount());
+
+            out.writeInt(context.clock.Time());
+            out.writeInt(mail_delivered_count);
+            scores.writeState(out);
+            out.writeInt(normal_packs);
+            out.writeInt(caution_packs);
+            out.writeInt(normal_weight);
+            out.writeInt(caution_weight);
+            out.writeInt(wrapping_time);
+            long[] delivered = MAIL_DELIVERED.toLongArray();
+            out.writeInt(delivered.length);
+            for (long word : delivered) {
+                out.writeLong(word);
+            }
+
+            List<MailItem> pooled = automail.mailPool.getPooledMail();
+            out.writeInt(pooled.size());
+            for (MailItem mailItem : pooled) {
+                SimulationSnapshot.writeMail(out, mailItem);
+            }
+            List<Robot> waiting = automail.mailPool.getWaitingRobots();
+            out.writeInt(waiting.size());
+            for (Robot robot : waiting) {
+                out.writeInt(robot.getId());
+            }
+            for (Robot robot : robots) {
+                robot.writeState(out);
+            }
+            ReservationTable.writeState(out, context.reservations);
+        }
+        context.trace.summary("T: " + context.clock.Time() + " | Snapshot saved to " + path);
+    }
+
+    /**
+     * Carries on from a snapshot saved by {@link #saveSnapshot(Path)}, in place of the start of the run. The
+     * simulation must not have taken a step yet, and must have the same robots and mail as the one saved,
+     * though anything else, such as the mail pool, may differ.
+     * @throws IOException if the snapshot cannot be read or was saved from a different simulation
+     */
+    public void restoreSnapshot(Path path) throws IOException {
+        start();
+        if (context.clock.Time() != 0 || mail_delivered_count != 0) {
+            throw new IllegalStateException("A snapshot can only be restored before the first step");
+        }
+        Robot[] robots = context.robotManager.getRobotArray();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SimulationSnapshot.MAGIC) {
+                throw new IOException(path + " is not a simulation snapshot");
+            }
+            int version = in.readInt();
+            if (version != SimulationSnapshot.VERSION) {
+                throw new IOException(path + " has unsupported snapshot version " + version);
+            }
+
+            int robotCount = in.readInt();
+            int tubeCapacity = in.readInt();
+            boolean caution = in.readBoolean();
+            byte source = in.readByte();
+            long seed = in.readLong();
+            int mailCount = in.readInt();
+            if (robotCount != robots.length || tubeCapacity != robots[0].getTubeCapacity() || caution != CAUTION_ENABLED) {
+                throw new IOException(String.format("%s was saved with %d robots, tube capacity %d and caution %b",
+                        path, robotCount, tubeCapacity, caution));
+            }
+            byte ownSource = mailGenerator != null ? SimulationSnapshot.GENERATED : SimulationSnapshot.REPLAYED;
+            if (source != ownSource || (mailGenerator != null && seed != mailGenerator.getSeed()) || mailCount != mailSource.getMailCount()) {
+                throw new IOException(path + " was saved with different mail, "
+                        + (source == SimulationSnapshot.GENERATED ? "generated from seed " + seed : "replayed from an arrival trace"));
+            }
+
+            int time = in.readInt();
+            context.clock.Tick(time);
+            mail_delivered_count = in.readInt();
+            scores.readState(in);
+            normal_packs = in.readInt();
+            caution_packs = in.readInt();
+            normal_weight = in.readInt();
+            caution_weight = in.readInt();
+            wrapping_time = in.readInt();
+            long[] delivered = new long[in.readInt()];
+            for (int i = 0; i < delivered.length; i++) {
+                delivered[i] = in.readLong();
+            }
+            MAIL_DELIVERED.clear();
+            MAIL_DELIVERED.or(BitSet.valueOf(delivered));
+
+            int pooled = in.readInt();
+            for (int i = 0; i < pooled; i++) {
+                automail.mailPool.addToPool(SimulationSnapshot.readMail(in));
+            }
+            int waiting = in.readInt();
+            for (int i = 0; i < waiting; i++) {
+                automail.mailPool.registerWaiting(robots[in.readInt()]);
+            }
+            for (Robot robot : robots) {
+                robot.readState(in);
+            }
+            ReservationTable.readState(in, context.reservations);
+            mailSource.skipTo(time);
+        }
+        context.trace.summary("T: " + context.clock.Time() + " | Restored from " + path);
+    }
+
+    /**
+     * @return whether all the mail has been delivered
+     */
+    public boolean isComplete() {
+        return mail_delivered_count == mailSource.getMailCount();
+    }
+
+    /**
+     * Runs a single time step, or with the event engine skips to the next one in which anything but robot
+     * movement happens and runs that
+     */
+    public void step() throws ExcessiveDeliveryException, ItemTooHeavyException, BreakingFragileItemException {
+        if (EVENT_ENGINE) {
+            skipQuietSteps();
+        }
+        mailSource.step();
+        automail.mailPool.step();
+        for (Robot robot: context.robotManager.getRobotArray()) {
+            robot.step();
+        }
+        context.clock.Tick();
+    }
+
+    /**
+     * Advances the clock straight to the next time step in which something other than robots moving between
+     * floors happens: mail arriving, the pool loading a robot, or a robot arriving, delivering or wrapping.
+     * The robots are moved along as if every skipped step had been simulated.
+     */
+    private void skipQuietSteps() {
+        if (!automail.mailPool.isIdle()) return;
+        int nextArrival = mailSource.nextArrivalTime();
+        int steps = nextArrival == Integer.MAX_VALUE ? Integer.MAX_VALUE : nextArrival - context.clock.Time();
+        Robot[] robots = context.robotManager.getRobotArray();
+        for (Robot robot : robots) {
+            steps = Math.min(steps, robot.quietSteps());
+        }
+        // Nothing is ever going to happen again, so leave the main loop to carry on as it would
+        if (steps == 0 || steps == Integer.MAX_VALUE) return;
+        for (Robot robot : robots) {
+            robot.skip(steps);
+        }
+        context.clock.Tick(steps);
+    }
+
+    class ReportDelivery implements IMailDelivery {
+
     	/** Confirm the delivery and calculate the total score */
     	public void deliver(MailItem deliveryItem){
-    		if(!MAIL_DELIVERED.contains(deliveryItem)){
-    			MAIL_DELIVERED.add(deliveryItem);
-                System.out.printf("T: %3d > Deliv(%4d) [%s]%n", Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
+    		if(!MAIL_DELIVERED.get(deliveryItem.getId())){
+    			MAIL_DELIVERED.set(deliveryItem.getId());
+    			mail_delivered_count++;
+                context.trace.mailDelivered(context.clock.Time(), mail_delivered_count, deliveryItem);
+                context.metrics.mailDelivered(context.clock.Time(), deliveryItem);
     			// Calculate delivery score
-    			total_score += calculateDeliveryScore(deliveryItem);
+    			scores.record(context.clock.Time(), deliveryItem);
 
     			if (STATISTICS_ENABLED) {
 					if (!deliveryItem.getFragile()) {
@@ -169,26 +576,89 @@ public class Simulation {
     	}
 
     }
-    
-    private static double calculateDeliveryScore(MailItem deliveryItem) {
-    	// Penalty for longer delivery times
-    	final double penalty = 1.2;
-    	double priority_weight = 0;
-        return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
+
+    /**
+     * @return the score accumulated so far, lower is better
+     */
+    public double getTotalScore() {
+        return scores.getTotal();
+    }
+
+    /**
+     * @return the score so far broken down by floor and fragility, kept up to date at every time step
+     */
+    public ScoreBoard getScores() {
+        return scores;
+    }
+
+    /**
+     * @return the number of mail items delivered so far
+     */
+    public int getDeliveredCount() {
+        return mail_delivered_count;
+    }
+
+    /**
+     * @return the number of mail items to be delivered in all
+     */
+    public int getMailCount() {
+        return mailSource.getMailCount();
     }
 
-    private static void printResults(){
-        System.out.println("T: "+Clock.Time()+" | Simulation complete!");
-        System.out.println("Final Delivery time: "+Clock.Time());
-        System.out.printf("Final Score: %.2f%n", total_score);
+    /**
+     * @return the current time, which is the final delivery time once the simulation has run
+     */
+    public int getTime() {
+        return context.clock.Time();
+    }
+
+    /**
+     * @return the measurements of the run, or null if the Metrics property is off
+     */
+    public MetricsRecorder getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Writes the measurements of the run to the Metrics_File, as CSV or JSON by the Metrics property,
+     * if they were taken
+     */
+    public void writeMetrics() throws IOException {
+        if (metrics == null) return;
+        metrics.finish(context.clock.Time());
+        try (Writer out = Files.newBufferedWriter(Paths.get(METRICS_FILE), StandardCharsets.UTF_8)) {
+            if (METRICS_FORMAT.equals("json")) {
+                metrics.writeJson(out);
+            } else {
+                metrics.writeCsv(out);
+            }
+        }
+        context.trace.summary("Metrics written to " + METRICS_FILE);
+    }
+
+    public void printResults(){
+        ITraceSink trace = context.trace;
+        trace.summary("T: "+context.clock.Time()+" | Simulation complete!");
+        trace.summary("Final Delivery time: "+context.clock.Time());
+        trace.summary(String.format("Final Score: %.2f", scores.getTotal()));
+        if (context.reservations != null) {
+            context.reservations.report(trace);
+        }
+        if (pacer != null) {
+            pacer.report(trace);
+        }
+        if (events != null) {
+            events.report(trace);
+            eventsReported = true;
+        }
 
         if (STATISTICS_ENABLED) {
 			// Stats required to print
-			System.out.printf("Number of packages delivered normally: %d%n", normal_packs);
-			System.out.printf("Number of packages delivered using caution: %d%n", caution_packs);
-			System.out.printf("Total weight of packages delivered normally: %d%n", normal_weight);
-			System.out.printf("Total weight of packages delivered using caution: %d%n", caution_weight);
-			System.out.printf("Total time spent wrapping and unwrapping: %d%n", wrapping_time);
+			trace.summary("Number of packages delivered normally: " + normal_packs);
+			trace.summary("Number of packages delivered using caution: " + caution_packs);
+			trace.summary("Total weight of packages delivered normally: " + normal_weight);
+			trace.summary("Total weight of packages delivered using caution: " + caution_weight);
+			trace.summary("Total time spent wrapping and unwrapping: " + wrapping_time);
 		}
     }
 }
@@ -0,0 +1,218 @@
+package automail;
+
+import java.util.Properties;
+
+/**
+ * Everything a simulation is set up from, parsed once, so that a simulation can be set up in code without
+ * going through automail.properties at all. Made with a {@link Builder}, either in code or from properties
+ * by {@link #fromProperties(Properties)}, which takes the same property names as automail.properties.
+ */
+public final class SimulationConfig {
+
+    /** The seed of the mail, or null for a random one */
+    public final Integer seed;
+    public final int floors;
+    public final int mailToCreate;
+    public final int mailMaxWeight;
+    public final int lastDeliveryTime;
+    public final int robots;
+    public final int tubeCapacity;
+    public final boolean caution;
+    public final boolean fragile;
+    public final boolean statistics;
+    /** The number of fragile items the mailroom wraps at once while they wait, 0 for no wrapping station */
+    public final int wrappingStation;
+    /** The most robots on either side of the shaft at a floor, 0 for robots to pass each other freely */
+    public final int shaftCapacity;
+    /** The class name of the mail pool */
+    public final String mailPool;
+    /** The class name of the scoring function */
+    public final String scoring;
+    /** tick or event */
+    public final String engine;
+    /** eager, stream or arrays */
+    public final String generator;
+    public final int streamWindow;
+    /** off, csv or json */
+    public final String metrics;
+    /** Where to write the metrics, or null for metrics.csv or metrics.json */
+    public final String metricsFile;
+    /** The arrival trace to replay, the trace to record to, and the snapshot to restore, each null for none */
+    public final String arrivals;
+    public final String recordArrivals;
+    public final String restore;
+    /** The time to save a snapshot at, or -1 for never */
+    public final int snapshotAt;
+    public final String snapshotFile;
+    /** The wall-clock milliseconds each time step takes, or 0 to run as fast as possible */
+    public final double tickPeriod;
+    /** The class name of the robot transport, used only when running in real time */
+    public final String robotTransport;
+    /** The class names of the event subscribers, separated by commas, or null to publish no events */
+    public final String eventSubscribers;
+    /** The number of events published ahead of the subscribers before the simulation waits for them */
+    public final int eventBuffer;
+    /** The most events handed to a subscriber at once */
+    public final int eventBatch;
+
+    private SimulationConfig(Builder builder) {
+        seed = builder.seed;
+        floors = builder.floors;
+        mailToCreate = builder.mailToCreate;
+        mailMaxWeight = builder.mailMaxWeight;
+        lastDeliveryTime = builder.lastDeliveryTime;
+        robots = builder.robots;
+        tubeCapacity = builder.tubeCapacity;
+        caution = builder.caution;
+        fragile = builder.fragile;
+        statistics = builder.statistics;
+        wrappingStation = builder.wrappingStation;
+        shaftCapacity = builder.shaftCapacity;
+        mailPool = builder.mailPool;
+        scoring = builder.scoring;
+        engine = builder.engine;
+        generator = builder.generator;
+        streamWindow = builder.streamWindow;
+        metrics = builder.metrics;
+        metricsFile = builder.metricsFile;
+        arrivals = builder.arrivals;
+        recordArrivals = builder.recordArrivals;
+        restore = builder.restore;
+        snapshotAt = builder.snapshotAt;
+        snapshotFile = builder.snapshotFile;
+        tickPeriod = builder.tickPeriod;
+        robotTransport = builder.robotTransport;
+        eventSubscribers = builder.eventSubscribers;
+        eventBuffer = builder.eventBuffer;
+        eventBatch = builder.eventBatch;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the configuration given by the properties, properties missing taking the defaults of the Builder
+     * and those not used by a simulation, such as Trace, being ignored
+     */
+    public static SimulationConfig fromProperties(Properties automailProperties) {
+        Builder builder = new Builder();
+        for (String key : automailProperties.stringPropertyNames()) {
+            builder.set(key, automailProperties.getProperty(key));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects the configuration, starting from the defaults of {@link Simulation#loadProperties()}, except for
+     * Robots, whose default there of Standard is not a number of robots, so it starts from 1 here
+     */
+    public static final class Builder {
+
+        private Integer seed = null;
+        private int floors = 10;
+        private int mailToCreate = 80;
+        private int mailMaxWeight = 2000;
+        private int lastDeliveryTime = 100;
+        private int robots = 1;
+        private int tubeCapacity = 1;
+        private boolean caution = true;
+        private boolean fragile = false;
+        private boolean statistics = false;
+        private int wrappingStation = 0;
+        private int shaftCapacity = 0;
+        private String mailPool = "strategies.MailPool";
+        private String scoring = "automail.DelayScoring";
+        private String engine = "tick";
+        private String generator = "eager";
+        private int streamWindow = 65536;
+        private String metrics = "off";
+        private String metricsFile = null;
+        private String arrivals = null;
+        private String recordArrivals = null;
+        private String restore = null;
+        private int snapshotAt = -1;
+        private String snapshotFile = "snapshot.bin";
+        private double tickPeriod = 0;
+        private String robotTransport = "automail.FakeRobotTransport";
+        private String eventSubscribers = null;
+        private int eventBuffer = 65536;
+        private int eventBatch = 256;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets a value by its name in automail.properties
+         * @return whether the property is one a simulation is set up from
+         */
+        public boolean set(String key, String value) {
+            switch (key) {
+                case "Seed": seed = Integer.valueOf(value); return true;
+                case "Floors": floors = Integer.parseInt(value); return true;
+                case "Mail_to_Create": mailToCreate = Integer.parseInt(value); return true;
+                case "Mail_Max_Weight": mailMaxWeight = Integer.parseInt(value); return true;
+                case "Last_Delivery_Time": lastDeliveryTime = Integer.parseInt(value); return true;
+                case "Robots": robots = Integer.parseInt(value); return true;
+                case "Tube_Capacity": tubeCapacity = Integer.parseInt(value); return true;
+                case "Caution": caution = Boolean.parseBoolean(value); return true;
+                case "Fragile": fragile = Boolean.parseBoolean(value); return true;
+                case "Statistics": statistics = Boolean.parseBoolean(value); return true;
+                case "Wrapping_Station": wrappingStation = Integer.parseInt(value); return true;
+                case "Shaft_Capacity": shaftCapacity = Integer.parseInt(value); return true;
+                case "MailPool": mailPool = value; return true;
+                case "Scoring": scoring = value; return true;
+                case "Engine": engine = value; return true;
+                case "Generator": generator = value; return true;
+                case "Stream_Window": streamWindow = Integer.parseInt(value); return true;
+                case "Metrics": metrics = value.toLowerCase(); return true;
+                case "Metrics_File": metricsFile = value; return true;
+                case "Arrivals": arrivals = value; return true;
+                case "Record_Arrivals": recordArrivals = value; return true;
+                case "Restore": restore = value; return true;
+                case "Snapshot_At": snapshotAt = Integer.parseInt(value); return true;
+                case "Snapshot_File": snapshotFile = value; return true;
+                case "Tick_Period": tickPeriod = Double.parseDouble(value); return true;
+                case "Robot_Transport": robotTransport = value; return true;
+                case "Event_Subscribers": eventSubscribers = value; return true;
+                case "Event_Buffer": eventBuffer = Integer.parseInt(value); return true;
+                case "Event_Batch": eventBatch = Integer.parseInt(value); return true;
+                default: return false;
+            }
+        }
+
+        public Builder seed(Integer seed) { this.seed = seed; return this; }
+        public Builder floors(int floors) { this.floors = floors; return this; }
+        public Builder mailToCreate(int mailToCreate) { this.mailToCreate = mailToCreate; return this; }
+        public Builder mailMaxWeight(int mailMaxWeight) { this.mailMaxWeight = mailMaxWeight; return this; }
+        public Builder lastDeliveryTime(int lastDeliveryTime) { this.lastDeliveryTime = lastDeliveryTime; return this; }
+        public Builder robots(int robots) { this.robots = robots; return this; }
+        public Builder tubeCapacity(int tubeCapacity) { this.tubeCapacity = tubeCapacity; return this; }
+        public Builder caution(boolean caution) { this.caution = caution; return this; }
+        public Builder fragile(boolean fragile) { this.fragile = fragile; return this; }
+        public Builder statistics(boolean statistics) { this.statistics = statistics; return this; }
+        public Builder wrappingStation(int wrappingStation) { this.wrappingStation = wrappingStation; return this; }
+        public Builder shaftCapacity(int shaftCapacity) { this.shaftCapacity = shaftCapacity; return this; }
+        public Builder mailPool(String mailPool) { this.mailPool = mailPool; return this; }
+        public Builder scoring(String scoring) { this.scoring = scoring; return this; }
+        public Builder engine(String engine) { this.engine = engine; return this; }
+        public Builder generator(String generator) { this.generator = generator; return this; }
+        public Builder streamWindow(int streamWindow) { this.streamWindow = streamWindow; return this; }
+        public Builder metrics(String metrics) { this.metrics = metrics.toLowerCase(); return this; }
+        public Builder metricsFile(String metricsFile) { this.metricsFile = metricsFile; return this; }
+        public Builder arrivals(String arrivals) { this.arrivals = arrivals; return this; }
+        public Builder recordArrivals(String recordArrivals) { this.recordArrivals = recordArrivals; return this; }
+        public Builder restore(String restore) { this.restore = restore; return this; }
+        public Builder snapshotAt(int snapshotAt) { this.snapshotAt = snapshotAt; return this; }
+        public Builder snapshotFile(String snapshotFile) { this.snapshotFile = snapshotFile; return this; }
+        public Builder tickPeriod(double tickPeriod) { this.tickPeriod = tickPeriod; return this; }
+        public Builder robotTransport(String robotTransport) { this.robotTransport = robotTransport; return this; }
+        public Builder eventSubscribers(String eventSubscribers) { this.eventSubscribers = eventSubscribers; return this; }
+        public Builder eventBuffer(int eventBuffer) { this.eventBuffer = eventBuffer; return this; }
+        public Builder eventBatch(int eventBatch) { this.eventBatch = eventBatch; return this; }
+
+        public SimulationConfig build() {
+            return new SimulationConfig(this);
+        }
+    }
+}
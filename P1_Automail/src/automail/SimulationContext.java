@@ -0,0 +1,57 @@
+package automail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the state shared by everything taking part in one run of the simulation. Nothing in here is static,
+ * so that several simulations can run side by side in one JVM without seeing each other.
+ */
+public class SimulationContext {
+
+    public final Building building;
+    public final Clock clock;
+    public final RobotManager robotManager;
+    /** Where the progress of the simulation is traced */
+    public final ITraceSink trace;
+    /** Where measurements of the simulation are sent */
+    public final IMetricsSink metrics;
+    /** The number of fragile items the mail pool's wrapping station wraps at once, 0 for no station */
+    public final int wrappingSlots;
+    /** The floors the robots have reserved in the shaft, or null if robots pass each other freely */
+    public final ReservationTable reservations;
+
+    /** Safe to hand out from several threads, and deterministic as long as the items are created in a fixed order */
+    private final AtomicInteger mailCount = new AtomicInteger();
+    private final AtomicInteger robotCount = new AtomicInteger();
+
+    /**
+     * @param metrics where measurements are sent, {@link IMetricsSink#NONE} to take none
+     * @param wrappingSlots the number of fragile items the wrapping station wraps at once, 0 for no station
+     * @param shaftCapacity the most robots on either side of the shaft at a floor, 0 for no limit
+     */
+    public SimulationContext(Building building, Clock clock, ITraceSink trace, IMetricsSink metrics, int wrappingSlots,
+            int shaftCapacity) {
+        this.building = building;
+        this.clock = clock;
+        this.robotManager = new RobotManager(building.FLOORS);
+        this.trace = trace;
+        this.metrics = metrics;
+        this.wrappingSlots = wrappingSlots;
+        this.reservations = shaftCapacity > 0 ? new ReservationTable(building.FLOORS, shaftCapacity) : null;
+    }
+
+    /**
+     * Hands out a block of consecutive mail item ids at once
+     * @return the first of count unused ids
+     */
+    int reserveMailIds(int count) {
+        return mailCount.getAndAdd(count);
+    }
+
+    /**
+     * @return the next unused robot id, in order of creation from 0
+     */
+    int nextRobotId() {
+        return robotCount.getAndIncrement();
+    }
+}
@@ -0,0 +1,118 @@
+package automail;
+
+/**
+ * Something that happened in a simulation, as published on an {@link EventBus}. The bus keeps a fixed ring of
+ * these and fills them in again as it goes round, so subscribers must copy out anything they keep once their
+ * {@link IEventSubscriber#onEvents(java.util.List)} call has returned. Mail item fields are copied from the
+ * item when the event happens, as the item itself goes on changing.
+ *
+ * Only the fields of an event's type are filled in; the others keep whatever was there before.
+ */
+public final class SimulationEvent {
+
+    public enum Type {
+        /** Mail has arrived: the mail item fields */
+        MAIL_ARRIVED,
+        /** A delivery has been confirmed: the mail item fields */
+        MAIL_DELIVERED,
+        /** A robot has changed state: robot, from and to */
+        STATE_CHANGED,
+        /** A robot has spent a time step wrapping an item: robot and the mail item fields */
+        MAIL_WRAPPED,
+        /** A robot has spent a time step unwrapping an item: robot and the mail item fields */
+        MAIL_UNWRAPPED,
+        /** The wrapping station has spent a time step wrapping an item: the mail item fields */
+        STATION_WRAPPED,
+        /** A robot has been held up for a time step: robot */
+        ROBOT_BLOCKED,
+        /** The mail pool's size has changed: depth */
+        POOL_CHANGED,
+        /** The wrapping station has finished a time step: depth, the items still to wrap */
+        WRAPPING_QUEUE_CHANGED
+    }
+
+    private Type type;
+    private int time;
+    private int robot;
+    private Robot.RobotState from;
+    private Robot.RobotState to;
+    private int depth;
+    private int mailId;
+    private int arrivalTime;
+    private int destFloor;
+    private int weight;
+    private boolean fragile;
+
+    SimulationEvent() {
+    }
+
+    void set(Type type, int time) {
+        this.type = type;
+        this.time = time;
+    }
+
+    void setMail(MailItem mailItem) {
+        mailId = mailItem.getId();
+        arrivalTime = mailItem.getArrivalTime();
+        destFloor = mailItem.getDestFloor();
+        weight = mailItem.getWeight();
+        fragile = mailItem.getFragile();
+    }
+
+    void setRobot(int robot) {
+        this.robot = robot;
+    }
+
+    void setStates(Robot.RobotState from, Robot.RobotState to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public int getRobot() {
+        return robot;
+    }
+
+    public Robot.RobotState getFrom() {
+        return from;
+    }
+
+    public Robot.RobotState getTo() {
+        return to;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getMailId() {
+        return mailId;
+    }
+
+    public int getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public int getDestFloor() {
+        return destFloor;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean getFragile() {
+        return fragile;
+    }
+}
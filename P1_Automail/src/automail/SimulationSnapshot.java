@@ -0,0 +1,71 @@
+package automail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The binary format of a snapshot of a simulation, written by {@link Simulation#saveSnapshot} and read back by
+ * {@link Simulation#restoreSnapshot}. All numbers are big-endian as written by a DataOutputStream:
+ *
+ *   header:   magic (int), version (int)
+ *   config:   robots (int), tube capacity (int), caution (boolean), mail source (MailSourceKind byte),
+ *             seed (long), mail count (int)
+ *   progress: time (int), delivered count (int), scores (as written by {@link ScoreBoard#writeState}),
+ *             the five statistics counters (int),
+ *             delivered ids (long count, then that many longs of a BitSet)
+ *   pool:     item count (int), then the items in pool order
+ *   waiting:  robot count (int), then the ids of the robots waiting for the pool in order
+ *   robots:   the state of each robot in order of id, as written by {@link Robot#writeState}
+ *   shaft:    the contention counters, as written by {@link ReservationTable#writeState}
+ *
+ * A mail item is its id (int, -1 for no item), destination floor, arrival time and weight (ints), then a
+ * byte holding whether it is fragile in bit 0 and its wrapping in bits 1 and 2.
+ *
+ * The mail still to arrive is not in the snapshot: it is made again from the seed by the restoring
+ * simulation, which must be set up with the same mail properties.
+ */
+final class SimulationSnapshot {
+
+    /** "AMSS", for automail simulation snapshot */
+    static final int MAGIC = 0x414d5353;
+    static final int VERSION = 3;
+
+    /** Where the restoring simulation's mail comes from, which must match that of the saved one */
+    static final byte GENERATED = 0;
+    static final byte REPLAYED = 1;
+
+    private static final int FRAGILE = 1;
+
+    private SimulationSnapshot() {
+    }
+
+    static void writeMail(DataOutput out, MailItem mailItem) throws IOException {
+        if (mailItem == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(mailItem.getId());
+        out.writeInt(mailItem.getDestFloor());
+        out.writeInt(mailItem.getArrivalTime());
+        out.writeInt(mailItem.getWeight());
+        out.writeByte((mailItem.getFragile() ? FRAGILE : 0) | mailItem.getWrapping() << 1);
+    }
+
+    /**
+     * @return the item written by {@link #writeMail}, or null if no item was
+     */
+    static MailItem readMail(DataInput in) throws IOException {
+        int id = in.readInt();
+        if (id == -1) return null;
+        int floor = in.readInt();
+        int arrival = in.readInt();
+        int weight = in.readInt();
+        int flags = in.readUnsignedByte();
+        MailItem mailItem = new MailItem(id, floor, arrival, weight, (flags & FRAGILE) != 0);
+        for (int wrapping = flags >> 1; wrapping > 0; wrapping--) {
+            mailItem.wrap();
+        }
+        return mailItem;
+    }
+}
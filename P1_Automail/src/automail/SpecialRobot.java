@@ -4,7 +4,9 @@ import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
 
-import java.util.LinkedList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class SpecialRobot extends Robot implements ICaution{
 
@@ -18,9 +20,23 @@ public class SpecialRobot extends Robot implements ICaution{
      *
      * @param delivery  governs the final delivery
      * @param mailPool  is the source of mail items
+     * @param context   the simulation the robot belongs to
      */
-    public SpecialRobot(IMailDelivery delivery, IMailPool mailPool) {
-        super(delivery, mailPool);
+    public SpecialRobot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context) {
+        super(delivery, mailPool, context);
+    }
+
+    /**
+     * Initiates the robot's location at the start to be at the mailroom
+     * also set it to be waiting for mail.
+     *
+     * @param delivery      governs the final delivery
+     * @param mailPool      is the source of mail items
+     * @param context       the simulation the robot belongs to
+     * @param tubeCapacity  the number of items the tube holds
+     */
+    public SpecialRobot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context, int tubeCapacity) {
+        super(delivery, mailPool, context, tubeCapacity);
     }
 
     @Override
@@ -52,9 +68,9 @@ public class SpecialRobot extends Robot implements ICaution{
      * Check if the mail item is in hands
      * @param id Id of the item to check if it is in robot's hands
      */
-    public boolean itemIsInHands(String id) {
-        if (this.getDeliveryItem() != null && this.getDeliveryItem().id.equals(id)
-                || this.specialItem != null && specialItem.getId().equals(id)){
+    public boolean itemIsInHands(int id) {
+        if (this.getDeliveryItem() != null && this.getDeliveryItem().id == id
+                || this.specialItem != null && specialItem.getId() == id){
             return true;
         }
         else {
@@ -62,8 +78,17 @@ public class SpecialRobot extends Robot implements ICaution{
         }
     }
 
-    private boolean onlySpecial() {
-        return (getTube() == null && getDeliveryItem() == null && specialItem != null) ;
+    /**
+     * Whether the robot is heading for the fragile item's floor to deliver it, or is there delivering it
+     */
+    private boolean deliveringSpecial() {
+        return specialItem != null && this.getDestination_floor() == specialItem.getDestFloor()
+                && (this.getDeliveryItem() == null || this.getDeliveryItem().destination_floor != this.getDestination_floor());
+    }
+
+    @Override
+    protected boolean deliversFragile() {
+        return deliveringSpecial();
     }
 
     /**
@@ -77,7 +102,7 @@ public class SpecialRobot extends Robot implements ICaution{
         if (this.getDeliveryItem() != null && this.getDestination_floor() == this.getDeliveryItem().destination_floor){
             /** Delivery complete, report this to the simulator! */
             delivery.deliver(this.getDeliveryItem());
-            System.out.printf("T: %3d > %9s-> Deliver item %s%n", Clock.Time(), getIdTube(), this.getDeliveryItem().id);
+            context.trace.robotDelivered(context.clock.Time(), id, getTubeCount(), this.getDeliveryItem().id);
             this.setDeliveryItem(null);
         }
         // If item to be delivered is fragile
@@ -92,18 +117,33 @@ public class SpecialRobot extends Robot implements ICaution{
             if (specialItem.getWrapping() == MailItem.UNWRAPPED){
                 this.delivery.deliver(specialItem);
                 specialItem = null;
+                relocate();
             }
         }
 
         this.incrementDeliveryCounter();
-        if(this.getDeliveryCounter() > 3){  // Implies a simulation bug
+        if(this.getDeliveryCounter() > getTubeCapacity() + 2){  // Implies a simulation bug
             throw new ExcessiveDeliveryException();
         }
     }
 
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        SimulationSnapshot.writeMail(out, specialItem);
+    }
+
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        specialItem = SimulationSnapshot.readMail(in);
+        relocate();
+    }
+
     public void handleWrapping(){
         if (this.getCurrent_floor() == Building.MAILROOM_LOCATION && this.specialItem != null) {
             this.specialItem.wrap();
+            context.metrics.mailWrapped(context.clock.Time(), id, specialItem);
             this.dispatch();
         }
     }
@@ -111,6 +151,7 @@ public class SpecialRobot extends Robot implements ICaution{
     public void handleUnwrapping() {
         if (this.getCurrent_floor() == this.getDestination_floor() && this.specialItem != null){
             specialItem.unwrap();
+            context.metrics.mailUnwrapped(context.clock.Time(), id, specialItem);
         }
     }
 
@@ -125,6 +166,7 @@ public class SpecialRobot extends Robot implements ICaution{
         // But if there is a special item, do not delivery if it is not fully wrapped
         if (getDeliveryItem() != null && specialItem == null || specialItem != null && specialItem.getWrapping() == MailItem.WRAPPED) {
             setRoute();
+            context.metrics.robotStateChanged(context.clock.Time(), id, current_state, RobotState.DELIVERING);
             this.current_state = RobotState.DELIVERING;
             return;
         }
@@ -135,15 +177,28 @@ public class SpecialRobot extends Robot implements ICaution{
 
     @Override
     /**
-     * Sets the route for the robot
+     * Sets the route for the robot, to whichever of the item in hand and the fragile item comes first on its sweep
      */
     protected void setRoute(){
-        if (this.getDeliveryItem() != null) {
-            this.setDestination_floor(this.getDeliveryItem().destination_floor);
-        }
-        else if (specialItem != null) {
+        if (specialItem != null && (this.getDeliveryItem() == null || specialFirst())) {
             this.setDestination_floor(specialItem.getDestFloor());
         }
+        else if (this.getDeliveryItem() != null) {
+            this.setDestination_floor(this.getDeliveryItem().destination_floor);
+        }
+    }
+
+    /**
+     * Whether the fragile item is reached before the item in hand on the sweep the robot is making. On the way
+     * up, that is if it lies between here and the item in hand, one below here being left for the way down.
+     * On the way down, it is if it lies at or above the item in hand. When both are for the same floor, the
+     * item in hand is still delivered first, by {@link #deliverMail()}.
+     */
+    private boolean specialFirst() {
+        int here = this.getCurrent_floor();
+        int special = specialItem.getDestFloor();
+        int next = this.getDeliveryItem().destination_floor;
+        return next >= here ? here <= special && special <= next : special >= next;
     }
 
     /**
@@ -153,15 +208,21 @@ public class SpecialRobot extends Robot implements ICaution{
     @Override
     protected void moveTowards(int destination) {
         if( Math.abs(this.getCurrent_floor() - destination) == 1 && checkFloor(destination)
-                && this.specialItem != null && getTube() == null && getDeliveryItem() == null){
+                && deliveringSpecial()){
+            context.metrics.robotBlocked(context.clock.Time(), id);
+            releaseReservations();
             return;
         }
 
         //Checks if when not carrying fragile item, another robot carrying fragile item is present on the floor
         if(Math.abs(this.getCurrent_floor() - destination) == 1 && checkFragileDelivery(destination) == true){
+            context.metrics.robotBlocked(context.clock.Time(), id);
+            releaseReservations();
             return;
         }
 
+        if (!claimMove(destination)) return;
+
         if(this.getCurrent_floor() < destination){
             this.setCurrent_floor(this.getCurrent_floor()+1);
         } else {
@@ -169,6 +230,15 @@ public class SpecialRobot extends Robot implements ICaution{
         }
     }
 
+    @Override
+    /**
+     * Moves next to the destination floor may be held up by other robots
+     * @param distance the number of floors the robot still has to travel
+     */
+    protected int unobstructedMoves(int distance) {
+        return Math.max(distance - 1, 0);
+    }
+
     @Override
     /**
      * String to print when robot is delivering
@@ -176,7 +246,7 @@ public class SpecialRobot extends Robot implements ICaution{
     public void printDelivery() {
         super.printDelivery();
         if (specialItem != null && this.getDeliveryItem() == null){
-            System.out.printf("T: %3d > %9s-> [%s]%n", Clock.Time(), getIdTube(), specialItem.toString());
+            context.trace.robotDelivering(context.clock.Time(), id, getTubeCount(), specialItem);
         }
     }
 
@@ -215,6 +285,7 @@ public class SpecialRobot extends Robot implements ICaution{
             return false;
         }
         specialItem = mailItem;
+        relocate();
         if (specialItem.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
         return true;
     }
@@ -224,15 +295,8 @@ public class SpecialRobot extends Robot implements ICaution{
      * @param destFloor the current floor of the robot
      */
     public boolean checkFloor(int destFloor){
-        LinkedList<Robot> robots = RobotManager.getInstance().getRobots();
-        for(Robot robot : robots){
-
-            // if you found a robot in the same floor
-            if (robot.getCurrent_floor() == destFloor && robot.getDestination_floor() == destFloor) {
-                return true;
-            }
-        }
-        return false;
+        // if there is a robot in the same floor
+        return context.robotManager.isParkedAt(destFloor);
     }
 
     /**
@@ -240,18 +304,7 @@ public class SpecialRobot extends Robot implements ICaution{
      * @param destFloor the current floor of the robot
      */
     public boolean checkFragileDelivery(int destFloor){
-        LinkedList<Robot> robots = RobotManager.getInstance().getRobots();
-        for(Robot robot : robots){
-            if (robot instanceof SpecialRobot){
-                SpecialRobot specialRobot = (SpecialRobot) robot;
-
-                // If a robot is delivering fragile item on floor we're trying to move to
-                if (specialRobot.getCurrent_floor() == destFloor && specialRobot.onlySpecial()
-                        && specialRobot.getDestination_floor() == destFloor) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        // If a robot is delivering fragile item on floor we're trying to move to
+        return context.robotManager.isDeliveringFragileAt(destFloor);
     }
 }
@@ -6,7 +6,7 @@ public class Automail {
 
     public IMailPool mailPool;
     
-    public Automail(IMailPool mailPool, IMailDelivery delivery, int numRobots, boolean caution) {
+    public Automail(IMailPool mailPool, IMailDelivery delivery, int numRobots, boolean caution, int tubeCapacity, SimulationContext context) {
     	// Swap between simple provided strategies and your strategies here
     	    	
     	/** Initialize the MailPool */
@@ -16,11 +16,11 @@ public class Automail {
     	/** Initialize robots */
     	Robot[] robots = new Robot[numRobots];
     	if (!caution) {
-    	    for (int i = 0; i < numRobots; i++) robots[i] = new Robot(delivery, mailPool);
+    	    for (int i = 0; i < numRobots; i++) robots[i] = new Robot(delivery, mailPool, context, tubeCapacity);
         } else {
-            for (int i = 0; i < numRobots; i++) robots[i] = new SpecialRobot(delivery, mailPool);
+            for (int i = 0; i < numRobots; i++) robots[i] = new SpecialRobot(delivery, mailPool, context, tubeCapacity);
         }
-    	RobotManager.getInstance().addRobots(robots);
+    	context.robotManager.addRobots(robots);
     }
 
 
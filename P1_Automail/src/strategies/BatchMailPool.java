@@ -0,0 +1,302 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import automail.Building;
+import automail.DelayScoring;
+import automail.ICaution;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A mail pool which loads all the waiting robots together, choosing what each carries to keep the delivery
+ * score down rather than simply going in floor order.
+ *
+ * An item's penalty grows at 1.2 * age^0.2 per tick, and delivering it ties a robot up for the round trip
+ * to its floor. Each waiting robot in turn is given the item with the highest ratio of the two, which is
+ * the order that keeps the total penalty lowest (Smith's rule), so near floors go first but old items are
+ * not left behind. Its tube then takes the item with the lowest incremental cost: the extra trip time it
+ * adds, priced at the growth rate of the penalties of the items waiting, less the penalty saved by taking
+ * it now rather than on a later trip, and so on until the tube is full or no item left has a negative cost.
+ * The robot delivers the whole load in one sweep, so an item only lengthens the trip if it is further up
+ * than everything else on board. A robot which can carry fragile items also takes the fragile item with the
+ * highest ratio. A wrapping station, if there is one, wraps the fragile items at the heads of the floors
+ * first, as only those can be handed out next, then those behind them.
+ *
+ * Items are kept in queues by floor, oldest first, so only the head of each non-empty floor is a candidate.
+ * Loading a robot costs O(tube capacity * non-empty floors), however many items are waiting, with penalties
+ * looked up in the table of {@link DelayScoring} rather than calculated.
+ */
+public class BatchMailPool implements IMailPool {
+
+	/** Holds the waiting items, which the queues refer to by handle */
+	private final PoolStore store = new ItemStore();
+	private FloorQueue[] normal;
+	private FloorQueue[] fragile;
+	/** Floors which have at least one normal / fragile item waiting */
+	private final BitSet normalFloors;
+	private final BitSet fragileFloors;
+	/** The arrival time of the oldest normal / fragile item waiting for each floor, kept to hand for the cost model */
+	private int[] normalOldest;
+	private int[] fragileOldest;
+	private LinkedList<Robot> robots;
+	private final SimulationContext context;
+	/** The delivery penalty the cost model prices items with */
+	private final DelayScoring scoring = new DelayScoring();
+	/** Wraps fragile items while they wait, or null if the mailroom has no wrapping station */
+	private final WrappingStation station;
+	/** The index of the next fragile item on each floor to offer the wrapping station */
+	private int[] wrapNext = new int[0];
+	private MailItem[] load = new MailItem[0];
+
+	private long sequence;
+	private int size;
+
+
+	public BatchMailPool(int nrobots, SimulationContext context) {
+		this.context = context;
+		// Start empty
+		normal = new FloorQueue[0];
+		fragile = new FloorQueue[0];
+		normalOldest = new int[0];
+		fragileOldest = new int[0];
+		normalFloors = new BitSet();
+		fragileFloors = new BitSet();
+		robots = new LinkedList<Robot>();
+		station = WrappingStation.create(context);
+		// Make room for every floor of the building up front
+		growFloors(context.building.FLOORS);
+	}
+
+	public void addToPool(MailItem mailItem) {
+		int floor = mailItem.getDestFloor();
+		if (floor >= normal.length) growFloors(floor);
+		int handle = store.add(mailItem);
+		if (mailItem.getFragile()) {
+			fragile[floor].add(handle, sequence++);
+			fragileFloors.set(floor);
+			fragileOldest[floor] = head(fragile, floor).getArrivalTime();
+		} else {
+			normal[floor].add(handle, sequence++);
+			normalFloors.set(floor);
+			normalOldest[floor] = head(normal, floor).getArrivalTime();
+		}
+		if (station != null) station.added(mailItem);
+		size++;
+		context.metrics.poolChanged(context.clock.Time(), size);
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException, BreakingFragileItemException {
+		if (isIdle()) return;
+		int now = context.clock.Time();
+		// The cost of a tick's delay to the next trip, the rate at which the waiting items' penalties are growing
+		double tickCost = size * penaltyRate(now - oldestArrival());
+		ListIterator<Robot> i = robots.listIterator();
+		while (i.hasNext() && size > 0) {
+			Robot robot = i.next();
+			assert(robot.isEmpty());
+			boolean caution = robot instanceof ICaution;
+			MailItem[] tube = tubeFor(robot);
+			if (!caution && !fragileFloors.isEmpty()) {
+				// A normal robot cannot carry the fragile items waiting
+				throw new BreakingFragileItemException();
+			}
+			int handFloor = bestFloor(normalOldest, normalFloors, now);
+			int specialFloor = caution ? bestFloor(fragileOldest, fragileFloors, now) : -1;
+			MailItem hand = handFloor < 0 ? null : take(normal, normalOldest, normalFloors, handFloor);
+			MailItem special = specialFloor < 0 ? null : take(fragile, fragileOldest, fragileFloors, specialFloor);
+			int tubeCount = 0;
+			if (hand != null) {
+				int furthest = Math.max(handFloor, specialFloor);
+				while (tubeCount < tube.length && size > 0) {
+					int tubeFloor = bestPartner(furthest, now, tickCost);
+					if (tubeFloor < 0) break;
+					MailItem partner = take(normal, normalOldest, normalFloors, tubeFloor);
+					// Hand first, as it is delivered first, so the nearest item goes in the hand
+					if (tubeFloor < hand.getDestFloor()) {
+						tube[tubeCount++] = hand;
+						hand = partner;
+					} else {
+						tube[tubeCount++] = partner;
+					}
+					furthest = Math.max(furthest, tubeFloor);
+				}
+			}
+			if (hand != null) robot.addToHand(hand);
+			if (special != null) robot.addToHand(special);
+			for (int t = 0; t < tubeCount; t++) {
+				robot.addToTube(tube[t]);
+				tube[t] = null;
+			}
+			robot.dispatch(); // send the robot off if it has any items to deliver
+			i.remove();       // remove from mailPool queue
+		}
+		if (station != null) wrapFragile();
+		context.metrics.poolChanged(now, size);
+	}
+
+	/**
+	 * Has the wrapping station wrap the fragile items left in the pool a rank at a time: the head of every
+	 * floor, lowest floor first, then the item behind each head, and so on
+	 */
+	private void wrapFragile() {
+		station.start();
+		if (wrapNext.length < fragile.length) wrapNext = new int[fragile.length];
+		for (int floor = fragileFloors.nextSetBit(0); floor >= 0; floor = fragileFloors.nextSetBit(floor + 1)) {
+			wrapNext[floor] = fragile[floor].first();
+		}
+		boolean more = true;
+		ranks:
+		while (more) {
+			more = false;
+			for (int floor = fragileFloors.nextSetBit(0); floor >= 0; floor = fragileFloors.nextSetBit(floor + 1)) {
+				FloorQueue queue = fragile[floor];
+				int index = wrapNext[floor];
+				if (index < 0) continue;
+				if (!station.offer(store, queue.get(index))) break ranks;
+				wrapNext[floor] = queue.firstAfter(queue.sequenceAt(index));
+				more |= wrapNext[floor] >= 0;
+			}
+		}
+		station.finish();
+	}
+
+	/**
+	 * @return the floor whose oldest item has the highest ratio of penalty rate to round trip time, or -1 if
+	 * there are no items
+	 */
+	private static int bestFloor(int[] oldest, BitSet floors, int now) {
+		int best = -1;
+		double bestRatio = 0;
+		for (int floor = floors.nextSetBit(0); floor >= 0; floor = floors.nextSetBit(floor + 1)) {
+			// Ordered the same as penaltyRate(age) / roundTrip, as the rate goes with age^0.2
+			double trip = roundTrip(floor);
+			double ratio = Math.max(now - oldest[floor], 1) / (trip * trip * trip * trip * trip);
+			if (ratio > bestRatio) {
+				bestRatio = ratio;
+				best = floor;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param furthest the furthest floor the robot is going to already
+	 * @return the floor of the normal item with the lowest incremental cost of adding it to the trip, as long as
+	 * carrying it is better than leaving it, or -1 if none is
+	 */
+	private int bestPartner(int furthest, int now, double tickCost) {
+		int best = -1;
+		double bestCost = 0;
+		// An item left behind waits for the next trip
+		int wait = roundTrip(furthest);
+		for (int floor = normalFloors.nextSetBit(0); floor >= 0; floor = normalFloors.nextSetBit(floor + 1)) {
+			int age = now - normalOldest[floor];
+			int trip = floor - Building.MAILROOM_LOCATION;
+			// Everything is delivered on the way up, so the trip only gets longer if the item is further up
+			int extraTrip = Math.max(0, roundTrip(floor) - roundTrip(furthest));
+			double carried = penalty(age + trip);
+			double left = penalty(age + wait + trip);
+			double cost = tickCost * extraTrip - (left - carried);
+			if (cost < bestCost) {
+				bestCost = cost;
+				best = floor;
+			}
+		}
+		return best;
+	}
+
+	/** How fast the penalty of an item of the given age is growing, the derivative of age^1.2 */
+	private static double penaltyRate(int age) {
+		return DelayScoring.PENALTY * Math.pow(Math.max(age, 1), DelayScoring.PENALTY - 1);
+	}
+
+	private double penalty(int x) {
+		// The delay scoring does not look at the item
+		return scoring.score(x, null);
+	}
+
+	/** Ticks to get to the floor and back, at least one */
+	private static int roundTrip(int floor) {
+		return Math.max(2 * (floor - Building.MAILROOM_LOCATION), 1);
+	}
+
+	private int oldestArrival() {
+		int oldest = Integer.MAX_VALUE;
+		for (int floor = normalFloors.nextSetBit(0); floor >= 0; floor = normalFloors.nextSetBit(floor + 1)) {
+			oldest = Math.min(oldest, normalOldest[floor]);
+		}
+		for (int floor = fragileFloors.nextSetBit(0); floor >= 0; floor = fragileFloors.nextSetBit(floor + 1)) {
+			oldest = Math.min(oldest, fragileOldest[floor]);
+		}
+		return oldest;
+	}
+
+	/** Somewhere to gather a robot's tube load before handing it over, sized to the robot's tube */
+	private MailItem[] tubeFor(Robot robot) {
+		if (load.length != robot.getTubeCapacity()) load = new MailItem[robot.getTubeCapacity()];
+		return load;
+	}
+
+	private MailItem head(FloorQueue[] queues, int floor) {
+		return store.get(queues[floor].get(queues[floor].first()));
+	}
+
+	private MailItem take(FloorQueue[] queues, int[] oldest, BitSet floors, int floor) {
+		int handle = queues[floor].remove(queues[floor].first());
+		if (station != null) station.taken(store, handle);
+		MailItem mailItem = store.get(handle);
+		store.release(handle);
+		if (queues[floor].isEmpty()) {
+			floors.clear(floor);
+		} else {
+			oldest[floor] = head(queues, floor).getArrivalTime();
+		}
+		size--;
+		return mailItem;
+	}
+
+	private void growFloors(int floor) {
+		FloorQueue[] newNormal = new FloorQueue[floor + 1];
+		FloorQueue[] newFragile = new FloorQueue[floor + 1];
+		System.arraycopy(normal, 0, newNormal, 0, normal.length);
+		System.arraycopy(fragile, 0, newFragile, 0, fragile.length);
+		for (int f = normal.length; f <= floor; f++) {
+			newNormal[f] = new FloorQueue();
+			newFragile[f] = new FloorQueue();
+		}
+		normal = newNormal;
+		fragile = newFragile;
+		normalOldest = Arrays.copyOf(normalOldest, floor + 1);
+		fragileOldest = Arrays.copyOf(fragileOldest, floor + 1);
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		robots.add(robot);
+	}
+
+	@Override
+	public List<MailItem> getPooledMail() {
+		return FloorQueue.inPoolOrder(store, normal, fragile);
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return new ArrayList<Robot>(robots);
+	}
+
+	@Override
+	public boolean isIdle() {
+		return (size == 0 || robots.isEmpty()) && (station == null || !station.isBusy());
+	}
+}
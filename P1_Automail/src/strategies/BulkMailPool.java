@@ -0,0 +1,70 @@
+package strategies;
+
+import automail.MailItem;
+import automail.MailStore;
+import automail.SimulationContext;
+
+/**
+ * {@link FloorMailPool} for large pools: robots are loaded in exactly the same order, but the waiting items
+ * are held as primitives in a {@link MailStore}, and the floor queues hold int handles into it. An item
+ * costs around 30 bytes while it waits, with nothing for the garbage collector to trace, and a MailItem is
+ * only made again when the item is handed to a robot or wrapped by the wrapping station.
+ */
+public class BulkMailPool extends FloorMailPool {
+
+	public BulkMailPool(int nrobots, SimulationContext context) {
+		super(nrobots, context, new Store(new MailStore(0)));
+	}
+
+	/**
+	 * The {@link PoolStore} view of a MailStore
+	 */
+	private static final class Store implements PoolStore {
+
+		private final MailStore mail;
+
+		Store(MailStore mail) {
+			this.mail = mail;
+		}
+
+		@Override
+		public int add(MailItem mailItem) {
+			return mail.add(mailItem);
+		}
+
+		@Override
+		public MailItem get(int handle) {
+			return mail.toMailItem(handle);
+		}
+
+		@Override
+		public void update(int handle, MailItem mailItem) {
+			mail.setWrapping(handle, mailItem.getWrapping());
+		}
+
+		@Override
+		public void release(int handle) {
+			mail.release(handle);
+		}
+
+		@Override
+		public int getArrivalTime(int handle) {
+			return mail.getArrivalTime(handle);
+		}
+
+		@Override
+		public int getWeight(int handle) {
+			return mail.getWeight(handle);
+		}
+
+		@Override
+		public boolean getFragile(int handle) {
+			return mail.getFragile(handle);
+		}
+
+		@Override
+		public int getWrapping(int handle) {
+			return mail.getWrapping(handle);
+		}
+	}
+}
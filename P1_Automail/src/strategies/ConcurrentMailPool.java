@@ -0,0 +1,86 @@
+package strategies;
+
+import java.util.List;
+
+import automail.Building;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A mail pool which items can be added to from any number of threads at once, such as scanners at several
+ * mailroom doors, while the simulation thread loads the robots. Each floor has its own lock-free queue
+ * for items to come in on, so producers only contend with others adding mail for the same floor. The
+ * simulation thread drains the queues into a {@link FloorMailPool} at the start of every call it makes, and
+ * loads robots exactly as that pool does.
+ *
+ * Only {@link #addToPool(MailItem)} may be called from other threads; everything else belongs to the
+ * simulation thread. An item added while the simulation thread is draining is taken on its next call.
+ */
+public class ConcurrentMailPool implements IMailPool {
+
+	/** Indexed by floor, with one extra queue at the end for items to floors outside the building */
+	private final MpscQueue<MailItem>[] incoming;
+	private final FloorMailPool pool;
+
+	@SuppressWarnings("unchecked")
+	public ConcurrentMailPool(int nrobots, SimulationContext context) {
+		incoming = (MpscQueue<MailItem>[]) new MpscQueue<?>[context.building.FLOORS + 2];
+		for (int floor = 0; floor < incoming.length; floor++) {
+			incoming[floor] = new MpscQueue<MailItem>();
+		}
+		pool = new FloorMailPool(nrobots, context);
+	}
+
+	/**
+	 * Queues an item for the pool, from any thread, without blocking
+	 */
+	@Override
+	public void addToPool(MailItem mailItem) {
+		int floor = mailItem.getDestFloor();
+		boolean inBuilding = floor >= Building.LOWEST_FLOOR && floor < incoming.length - 1;
+		incoming[inBuilding ? floor : incoming.length - 1].offer(mailItem);
+	}
+
+	/**
+	 * Moves every item queued so far into the pool. Items to the same floor stay in the order they were
+	 * queued in by any one producer, which is all the loading order depends on.
+	 */
+	private void drain() {
+		for (MpscQueue<MailItem> queue : incoming) {
+			for (MailItem mailItem = queue.poll(); mailItem != null; mailItem = queue.poll()) {
+				pool.addToPool(mailItem);
+			}
+		}
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException, BreakingFragileItemException {
+		drain();
+		pool.step();
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) {
+		pool.registerWaiting(robot);
+	}
+
+	@Override
+	public boolean isIdle() {
+		drain();
+		return pool.isIdle();
+	}
+
+	@Override
+	public List<MailItem> getPooledMail() {
+		drain();
+		return pool.getPooledMail();
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return pool.getWaitingRobots();
+	}
+}
@@ -0,0 +1,261 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import automail.ICaution;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A mail pool which keeps its items in buckets indexed by destination floor, with separate queues for
+ * fragile and normal items. Robots are loaded in exactly the same order as {@link MailPool}, lowest floor
+ * first and oldest first within a floor, but adding an item is O(1) and finding the next item to load only
+ * needs a scan of a bitset of the non-empty floors rather than the whole pool.
+ */
+public class FloorMailPool implements IMailPool {
+
+	/** Holds the waiting items, which the queues refer to by handle */
+	private final PoolStore store;
+	private FloorQueue[] normal;
+	private FloorQueue[] fragile;
+	/** Floors which have at least one normal / fragile item waiting */
+	private final BitSet normalFloors;
+	private final BitSet fragileFloors;
+	private LinkedList<Robot> robots;
+	private final SimulationContext context;
+	/** Wraps fragile items while they wait, or null if the mailroom has no wrapping station */
+	private final WrappingStation station;
+
+	/** Order in which items were added, used to compare positions across the two kinds of queue */
+	private long sequence;
+	private int size;
+
+	public FloorMailPool(int nrobots, SimulationContext context) {
+		this(nrobots, context, new ItemStore());
+	}
+
+	/**
+	 * @param store where the waiting items are kept
+	 */
+	FloorMailPool(int nrobots, SimulationContext context, PoolStore store) {
+		this.context = context;
+		this.store = store;
+		// Start empty
+		normal = new FloorQueue[0];
+		fragile = new FloorQueue[0];
+		normalFloors = new BitSet();
+		fragileFloors = new BitSet();
+		robots = new LinkedList<Robot>();
+		station = WrappingStation.create(context);
+		// Make room for every floor of the building up front
+		growFloors(context.building.FLOORS);
+	}
+
+	public void addToPool(MailItem mailItem) {
+		int floor = mailItem.getDestFloor();
+		if (floor >= normal.length) growFloors(floor);
+		int handle = store.add(mailItem);
+		if (mailItem.getFragile()) {
+			fragile[floor].add(handle, sequence++);
+			fragileFloors.set(floor);
+		} else {
+			normal[floor].add(handle, sequence++);
+			normalFloors.set(floor);
+		}
+		if (station != null) station.added(mailItem);
+		size++;
+		context.metrics.poolChanged(context.clock.Time(), size);
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException, BreakingFragileItemException {
+		ListIterator<Robot> i = robots.listIterator();
+		while (i.hasNext()) loadRobot(i);
+		if (station != null) wrapFragile();
+		context.metrics.poolChanged(context.clock.Time(), size);
+	}
+
+	/**
+	 * Has the wrapping station wrap the fragile items left in the pool, in the order they are handed out:
+	 * lowest floor first and oldest first within a floor
+	 */
+	private void wrapFragile() {
+		station.start();
+		floors:
+		for (int floor = fragileFloors.nextSetBit(0); floor >= 0; floor = fragileFloors.nextSetBit(floor + 1)) {
+			FloorQueue queue = fragile[floor];
+			for (int index = queue.first(); index >= 0; index = queue.firstAfter(queue.sequenceAt(index))) {
+				if (!station.offer(store, queue.get(index))) break floors;
+			}
+		}
+		station.finish();
+	}
+
+	/**
+	 * Hands out items the same way as a scan of the sorted pool would: the hands take the first items
+	 * they will accept, and the tube takes the first normal items after the point where the hands were filled.
+	 * Robot hands hold at most one item of each kind, so only the first normal and first fragile item
+	 * ever need to be offered.
+	 */
+	private void loadRobot(ListIterator<Robot> i) throws ItemTooHeavyException, BreakingFragileItemException {
+		Robot robot = i.next();
+		assert(robot.isEmpty());
+		if (size == 0) return;
+
+		int normalFloor = normalFloors.nextSetBit(0);
+		int fragileFloor = fragileFloors.nextSetBit(0);
+		int normalIndex = normalFloor < 0 ? -1 : normal[normalFloor].first();
+		int fragileIndex = fragileFloor < 0 ? -1 : fragile[fragileFloor].first();
+
+		// Offer the earlier of the two first, as the scan would reach it first
+		boolean fragileFirst = normalIndex < 0 || (fragileIndex >= 0 && (fragileFloor < normalFloor
+				|| (fragileFloor == normalFloor && fragile[fragileFloor].sequenceAt(fragileIndex) < normal[normalFloor].sequenceAt(normalIndex))));
+
+		// Position at which the hands were filled, if they ever were
+		int stopFloor = -1;
+		long stopSequence = 0;
+		for (int offer = 0; offer < 2 && !robot.handsFull(); offer++) {
+			boolean offerFragile = (offer == 0) == fragileFirst;
+			FloorQueue[] queues = offerFragile ? fragile : normal;
+			int floor = offerFragile ? fragileFloor : normalFloor;
+			int index = offerFragile ? fragileIndex : normalIndex;
+			if (index < 0) continue;
+			int handle = queues[floor].get(index);
+			long seq = queues[floor].sequenceAt(index);
+			// Both hands are free when first offered an item of their kind, so the robot only turns one away by throwing
+			if (offerFragile && !(robot instanceof ICaution)) throw new BreakingFragileItemException();
+			checkWeight(handle);
+			MailItem mailItem = store.get(handle);
+			robot.addToHand(mailItem); // hand first as we want higher priority delivered first
+			if (robot.itemIsInHands(mailItem.getId())) {
+				take(queues, offerFragile ? fragileFloors : normalFloors, floor, index);
+			}
+			if (robot.handsFull()) {
+				stopFloor = floor;
+				stopSequence = seq;
+			}
+		}
+
+		if (stopFloor >= 0 && size > 0) {
+			loadTube(robot, stopFloor, stopSequence);
+		}
+		robot.dispatch(); // send the robot off if it has any items to deliver
+		i.remove();       // remove from mailPool queue
+	}
+
+	/**
+	 * Fills the tube with the first normal items after the given position. Any fragile items passed over on
+	 * the way are reported as they would be when offered to the tube.
+	 */
+	private void loadTube(Robot robot, int fromFloor, long fromSequence) throws ItemTooHeavyException {
+		while (!robot.tubeFull() && size > 0) {
+			int floor = fromFloor;
+			int index = -1;
+			if (floor < normal.length) {
+				index = normal[floor].firstAfter(fromSequence);
+			}
+			if (index < 0) {
+				floor = normalFloors.nextSetBit(fromFloor + 1);
+				if (floor >= 0) index = normal[floor].first();
+			}
+			if (index < 0) {
+				loadTubeItem(robot, fromFloor, fromSequence, -1, -1);
+				return;
+			}
+			long sequence = normal[floor].sequenceAt(index);
+			if (!loadTubeItem(robot, fromFloor, fromSequence, floor, index)) return;
+			fromFloor = floor;
+			fromSequence = sequence;
+		}
+	}
+
+	/**
+	 * Puts the normal item at the given floor and index into the tube, after reporting the fragile items
+	 * between the given position and it. With no item, reports every fragile item after the position.
+	 * @return whether the item went into the tube
+	 */
+	private boolean loadTubeItem(Robot robot, int fromFloor, long fromSequence, int floor, int index) throws ItemTooHeavyException {
+		long toSequence = index < 0 ? Long.MAX_VALUE : normal[floor].sequenceAt(index);
+		int lastFloor = index < 0 ? fragile.length - 1 : floor;
+		int skipped = 0;
+		for (int f = fragileFloors.nextSetBit(fromFloor); f >= 0 && f <= lastFloor; f = fragileFloors.nextSetBit(f + 1)) {
+			skipped += fragile[f].countBetween(f == fromFloor ? fromSequence : -1, f == lastFloor ? toSequence : Long.MAX_VALUE);
+		}
+		if (skipped > 0) {
+			String message = new BreakingFragileItemException().getMessage();
+			for (int k = 0; k < skipped; k++) context.trace.message(message);
+		}
+
+		if (index >= 0) {
+			int handle = normal[floor].get(index);
+			checkWeight(handle);
+			MailItem mailItem = store.get(handle);
+			try {
+				robot.addToTube(mailItem);
+			} catch (BreakingFragileItemException e) {
+				context.trace.message(e.getMessage());
+				return false;
+			}
+			if (robot.itemIsInTube(mailItem.getId())) {
+				take(normal, normalFloors, floor, index);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fails on an item too heavy for any robot before it is made into a MailItem to hand over, as the robot would
+	 */
+	private void checkWeight(int handle) throws ItemTooHeavyException {
+		if (store.getWeight(handle) > Robot.INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+	}
+
+	private void take(FloorQueue[] queues, BitSet floors, int floor, int index) {
+		int handle = queues[floor].remove(index);
+		if (station != null) station.taken(store, handle);
+		store.release(handle);
+		if (queues[floor].isEmpty()) floors.clear(floor);
+		size--;
+	}
+
+	private void growFloors(int floor) {
+		FloorQueue[] newNormal = new FloorQueue[floor + 1];
+		FloorQueue[] newFragile = new FloorQueue[floor + 1];
+		System.arraycopy(normal, 0, newNormal, 0, normal.length);
+		System.arraycopy(fragile, 0, newFragile, 0, fragile.length);
+		for (int f = normal.length; f <= floor; f++) {
+			newNormal[f] = new FloorQueue();
+			newFragile[f] = new FloorQueue();
+		}
+		normal = newNormal;
+		fragile = newFragile;
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		robots.add(robot);
+	}
+
+	@Override
+	public List<MailItem> getPooledMail() {
+		return FloorQueue.inPoolOrder(store, normal, fragile);
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return new ArrayList<Robot>(robots);
+	}
+
+	@Override
+	public boolean isIdle() {
+		return (size == 0 || robots.isEmpty()) && (station == null || !station.isBusy());
+	}
+}
@@ -0,0 +1,143 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import automail.MailItem;
+
+/**
+ * A queue of the mail items waiting for a single floor, kept in the order they were added to the pool.
+ * Items are held as their handles in the pool's {@link PoolStore}, and every one carries the pool-wide
+ * sequence number it was added with, so positions can be compared across queues. Items are normally
+ * taken from the head; taking one from the middle leaves a hole which is skipped over lazily.
+ */
+class FloorQueue {
+
+	private static final int HOLE = -1;
+
+	private int[] handles;
+	private long[] sequence;
+	private int head;
+	private int tail;
+	private int size;
+
+	FloorQueue() {
+		handles = new int[4];
+		sequence = new long[4];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void add(int handle, long seq) {
+		if (tail == handles.length) grow();
+		handles[tail] = handle;
+		sequence[tail] = seq;
+		tail++;
+		size++;
+	}
+
+	/**
+	 * @return the index of the first item in the queue, or -1 if it is empty
+	 */
+	int first() {
+		return size == 0 ? -1 : head;
+	}
+
+	/**
+	 * @param seq a pool sequence number
+	 * @return the index of the first item added after seq, or -1 if there is none
+	 */
+	int firstAfter(long seq) {
+		int i = indexAfter(seq);
+		while (i < tail && handles[i] == HOLE) i++;
+		return i < tail ? i : -1;
+	}
+
+	/**
+	 * Counts the items added after one sequence number and before another. Only valid for a queue
+	 * which is only ever taken from at the head, as holes are not accounted for.
+	 * @param from count items added after this sequence number
+	 * @param to count items added before this sequence number
+	 */
+	int countBetween(long from, long to) {
+		return indexAfter(to - 1) - indexAfter(from);
+	}
+
+	/**
+	 * @return the handle of the item at the index
+	 */
+	int get(int index) {
+		return handles[index];
+	}
+
+	long sequenceAt(int index) {
+		return sequence[index];
+	}
+
+	/**
+	 * @return the handle of the item taken
+	 */
+	int remove(int index) {
+		int handle = handles[index];
+		handles[index] = HOLE;
+		size--;
+		if (size == 0) {
+			head = 0;
+			tail = 0;
+		} else if (index == head) {
+			while (handles[head] == HOLE) head++;
+		}
+		return handle;
+	}
+
+	/**
+	 * @return every item in the queues, in the order they were added to the pool
+	 */
+	static List<MailItem> inPoolOrder(PoolStore store, FloorQueue[]... queues) {
+		TreeMap<Long, MailItem> ordered = new TreeMap<Long, MailItem>();
+		for (FloorQueue[] floors : queues) {
+			for (FloorQueue queue : floors) {
+				for (int i = queue.head; i < queue.tail; i++) {
+					if (queue.handles[i] != HOLE) ordered.put(queue.sequence[i], store.get(queue.handles[i]));
+				}
+			}
+		}
+		return new ArrayList<MailItem>(ordered.values());
+	}
+
+	/** Binary search for the first slot with a sequence number greater than seq */
+	private int indexAfter(long seq) {
+		int low = head;
+		int high = tail;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sequence[mid] <= seq) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/** Compacts the live region to the front, doubling the arrays if they are more than half full */
+	private void grow() {
+		int length = tail - head;
+		int capacity = length * 2 > handles.length ? handles.length * 2 : handles.length;
+		int[] newHandles = new int[capacity];
+		long[] newSequence = new long[capacity];
+		System.arraycopy(handles, head, newHandles, 0, length);
+		System.arraycopy(sequence, head, newSequence, 0, length);
+		handles = newHandles;
+		sequence = newSequence;
+		head = 0;
+		tail = length;
+	}
+}
@@ -5,7 +5,7 @@ import automail.Robot;
 import exceptions.BreakingFragileItemException;
 import exceptions.ItemTooHeavyException;
 
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * addToPool is called when there are mail items newly arrived at the building to add to the MailPool or
@@ -30,4 +30,19 @@ public interface IMailPool {
      * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
      */	
 	void registerWaiting(Robot robot);
+
+	/**
+	 * @return true if there are no robots waiting or no items to give them, so that step() would do nothing
+	 */
+	boolean isIdle();
+
+	/**
+	 * @return the mail items in the pool, in an order which added one by one to an empty pool gives the same pool
+	 */
+	List<MailItem> getPooledMail();
+
+	/**
+	 * @return the robots waiting to be loaded, in the order they registered
+	 */
+	List<Robot> getWaitingRobots();
 }
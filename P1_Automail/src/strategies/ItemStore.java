@@ -0,0 +1,68 @@
+package strategies;
+
+import automail.HandleStore;
+import automail.MailItem;
+
+import java.util.Arrays;
+
+/**
+ * A {@link PoolStore} which keeps the MailItems themselves, handing back the same object the pool was given.
+ * Handles of released items are reused.
+ */
+class ItemStore extends HandleStore implements PoolStore {
+
+	private MailItem[] items = new MailItem[16];
+
+	@Override
+	public int add(MailItem mailItem) {
+		int handle = newHandle();
+		items[handle] = mailItem;
+		return handle;
+	}
+
+	@Override
+	public MailItem get(int handle) {
+		return items[handle];
+	}
+
+	@Override
+	public void update(int handle, MailItem mailItem) {
+		// The item was changed in place
+	}
+
+	@Override
+	public void release(int handle) {
+		items[handle] = null;
+		super.release(handle);
+	}
+
+	@Override
+	public int getArrivalTime(int handle) {
+		return items[handle].getArrivalTime();
+	}
+
+	@Override
+	public int getWeight(int handle) {
+		return items[handle].getWeight();
+	}
+
+	@Override
+	public boolean getFragile(int handle) {
+		return items[handle].getFragile();
+	}
+
+	@Override
+	public int getWrapping(int handle) {
+		return items[handle].getWrapping();
+	}
+
+	@Override
+	protected int capacity() {
+		return items.length;
+	}
+
+	@Override
+	protected void grow(int capacity) {
+		items = Arrays.copyOf(items, capacity);
+	}
+}
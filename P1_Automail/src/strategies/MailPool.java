@@ -1,11 +1,14 @@
 package strategies;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.ListIterator;
 
 import automail.MailItem;
 import automail.Robot;
+import automail.SimulationContext;
 import exceptions.BreakingFragileItemException;
 import exceptions.ItemTooHeavyException;
 
@@ -36,17 +39,24 @@ public class MailPool implements IMailPool {
 
 	private LinkedList<Item> pool;
 	private LinkedList<Robot> robots;
+	private final SimulationContext context;
+	/** Wraps fragile items while they wait, or null if the mailroom has no wrapping station */
+	private final WrappingStation station;
 
-	public MailPool(int nrobots){
+	public MailPool(int nrobots, SimulationContext context){
+		this.context = context;
 		// Start empty
 		pool = new LinkedList<Item>();
 		robots = new LinkedList<Robot>();
+		station = WrappingStation.create(context);
 	}
 
 	public void addToPool(MailItem mailItem) {
 		Item item = new Item(mailItem);
 		pool.add(item);
 		pool.sort(new ItemComparator());
+		if (station != null) station.added(mailItem);
+		context.metrics.poolChanged(context.clock.Time(), pool.size());
 	}
 	
 	@Override
@@ -54,6 +64,8 @@ public class MailPool implements IMailPool {
 		try{
 			ListIterator<Robot> i = robots.listIterator();
 			while (i.hasNext()) loadRobot(i);
+			if (station != null) wrapFragile();
+			context.metrics.poolChanged(context.clock.Time(), pool.size());
 		} catch (Exception e) { 
             throw e; 
         } 
@@ -71,22 +83,23 @@ public class MailPool implements IMailPool {
 					MailItem mailItem = j.next().mailItem;
 					robot.addToHand(mailItem); // hand first as we want higher priority delivered first
 					if (robot.itemIsInHands(mailItem.getId())){
+						if (station != null) station.taken(mailItem);
 						j.remove();
 					}
 				}
 				if (pool.size() > 0) {
-					// Ensures that item added to tube is not fragile
-					while(robot.getTube() == null && j.hasNext()){
+					// Ensures that items added to tube are not fragile
+					while(!robot.tubeFull() && j.hasNext()){
 						try {
 							MailItem mailItem = j.next().mailItem;
 							robot.addToTube(mailItem);
 							if (robot.itemIsInTube(mailItem.getId())){
+								if (station != null) station.taken(mailItem);
 								j.remove();
-								break;
 							}
 						}
 						catch (BreakingFragileItemException e){
-							System.out.println(e.getMessage());
+							context.trace.message(e.getMessage());
 						}
 					}
 				}
@@ -98,8 +111,38 @@ public class MailPool implements IMailPool {
 		}
 	}
 
+	/**
+	 * Has the wrapping station wrap the fragile items left in the pool, in the order they are handed out
+	 */
+	private void wrapFragile() {
+		station.start();
+		for (Item item : pool) {
+			if (item.mailItem.getFragile() && !station.offer(item.mailItem)) break;
+		}
+		station.finish();
+	}
+
 	@Override
 	public void registerWaiting(Robot robot) { // assumes won't be there already
 		robots.add(robot);
 	}
+
+	@Override
+	public boolean isIdle() {
+		return (pool.isEmpty() || robots.isEmpty()) && (station == null || !station.isBusy());
+	}
+
+	@Override
+	public List<MailItem> getPooledMail() {
+		List<MailItem> pooled = new ArrayList<MailItem>(pool.size());
+		for (Item item : pool) {
+			pooled.add(item.mailItem);
+		}
+		return pooled;
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return new ArrayList<Robot>(robots);
+	}
 }
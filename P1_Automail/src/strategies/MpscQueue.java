@@ -0,0 +1,62 @@
+package strategies;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An unbounded queue which any number of threads may add to at once without locking, and a single thread
+ * takes from. Producers swap themselves in as the tail with one atomic exchange and then link the old tail
+ * to their node; the consumer follows the links from the head. Items from each producer come out in the
+ * order that producer added them.
+ *
+ * A producer preempted between the exchange and the link hides its item, and any added after it, from the
+ * consumer until it links them: they are late, never lost.
+ */
+class MpscQueue<T> {
+
+	private static final class Node<T> {
+		T item;
+		volatile Node<T> next;
+
+		Node(T item) {
+			this.item = item;
+		}
+	}
+
+	/** The last node taken, or the starting stub, only ever touched by the consumer */
+	private Node<T> head;
+	private final AtomicReference<Node<T>> tail;
+
+	MpscQueue() {
+		head = new Node<T>(null);
+		tail = new AtomicReference<Node<T>>(head);
+	}
+
+	/**
+	 * Adds an item, from any thread
+	 */
+	void offer(T item) {
+		Node<T> node = new Node<T>(item);
+		Node<T> previous = tail.getAndSet(node);
+		previous.next = node;
+	}
+
+	/**
+	 * Takes the oldest item, from the consumer thread only
+	 * @return the item, or null if none is visible yet
+	 */
+	T poll() {
+		Node<T> next = head.next;
+		if (next == null) return null;
+		T item = next.item;
+		next.item = null;
+		head = next;
+		return item;
+	}
+
+	/**
+	 * @return whether no item is visible to the consumer, from the consumer thread only
+	 */
+	boolean isEmpty() {
+		return head.next == null;
+	}
+}
@@ -0,0 +1,39 @@
+package strategies;
+
+import automail.MailItem;
+
+/**
+ * Where a pool built on {@link FloorQueue}s keeps its waiting items, the queues holding int handles into it.
+ * The pool reads what it needs to choose and check an item through the handle, and only asks for the MailItem
+ * itself when the item is handed over, so a store may keep its items as something other than objects.
+ */
+interface PoolStore {
+
+	/**
+	 * @return the handle of the item, which stays valid until it is released
+	 */
+	int add(MailItem mailItem);
+
+	/**
+	 * @return the item at the handle, which may be a new copy each time
+	 */
+	MailItem get(int handle);
+
+	/**
+	 * Keeps the changes made to an item from {@link #get(int)}, such as its wrapping
+	 */
+	void update(int handle, MailItem mailItem);
+
+	/**
+	 * Frees the handle for reuse, after which it must not be used again
+	 */
+	void release(int handle);
+
+	int getArrivalTime(int handle);
+
+	int getWeight(int handle);
+
+	boolean getFragile(int handle);
+
+	int getWrapping(int handle);
+}
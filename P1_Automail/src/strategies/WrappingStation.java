@@ -0,0 +1,116 @@
+package strategies;
+
+import automail.MailItem;
+import automail.SimulationContext;
+
+/**
+ * A wrapping station in the mailroom, which wraps fragile items while they wait in the pool so that a
+ * special robot given one can leave straight away rather than wrapping it first. The station has a fixed
+ * number of slots, each taking one item one stage of wrapping further every time step, and is given the
+ * items in the order the pool hands them out, so those wrapped first are those going out first.
+ *
+ * The station keeps nothing but a count of the items still to wrap: an item's progress is its own wrapping,
+ * which stays with it in the pool, so the station picks up where it left off on a restored snapshot.
+ */
+class WrappingStation {
+
+	private final int slots;
+	private final SimulationContext context;
+	/** Fragile items in the pool not yet fully wrapped */
+	private int queued;
+	/** Slots used so far in this time step */
+	private int used;
+
+	/**
+	 * @param slots the number of items wrapped at once
+	 */
+	WrappingStation(int slots, SimulationContext context) {
+		this.slots = slots;
+		this.context = context;
+	}
+
+	/**
+	 * @return the station the context asks for, or null if it asks for none
+	 */
+	static WrappingStation create(SimulationContext context) {
+		return context.wrappingSlots > 0 ? new WrappingStation(context.wrappingSlots, context) : null;
+	}
+
+	/**
+	 * An item has been added to the pool
+	 */
+	void added(MailItem mailItem) {
+		if (needsWrapping(mailItem)) queued++;
+	}
+
+	/**
+	 * An item has been handed out of the pool, wrapped or not
+	 */
+	void taken(MailItem mailItem) {
+		if (needsWrapping(mailItem)) queued--;
+	}
+
+	/**
+	 * The item at the handle has been handed out of the pool, wrapped or not
+	 */
+	void taken(PoolStore store, int handle) {
+		if (needsWrapping(store, handle)) queued--;
+	}
+
+	/**
+	 * @return whether the station has an item to wrap in the next time step
+	 */
+	boolean isBusy() {
+		return queued > 0;
+	}
+
+	/**
+	 * Starts a time step's wrapping, after which the pool offers its fragile items in the order it hands them
+	 * out until {@link #offer(MailItem)} turns one away, then calls {@link #finish()}
+	 */
+	void start() {
+		used = 0;
+	}
+
+	/**
+	 * Takes the item one stage of wrapping further if it needs it and a slot is free
+	 * @return whether the station can take any more items this time step
+	 */
+	boolean offer(MailItem mailItem) {
+		if (used == slots || queued == 0) return false;
+		if (needsWrapping(mailItem)) wrap(mailItem);
+		return used < slots && queued > 0;
+	}
+
+	/**
+	 * {@link #offer(MailItem)} for the item at the handle, only made as a MailItem if it is wrapped
+	 */
+	boolean offer(PoolStore store, int handle) {
+		if (used == slots || queued == 0) return false;
+		if (needsWrapping(store, handle)) {
+			MailItem mailItem = store.get(handle);
+			wrap(mailItem);
+			store.update(handle, mailItem);
+		}
+		return used < slots && queued > 0;
+	}
+
+	void finish() {
+		context.metrics.wrappingQueueChanged(context.clock.Time(), queued);
+	}
+
+	private void wrap(MailItem mailItem) {
+		used++;
+		mailItem.wrap();
+		context.metrics.stationWrapped(context.clock.Time(), mailItem);
+		if (!needsWrapping(mailItem)) queued--;
+	}
+
+	private static boolean needsWrapping(PoolStore store, int handle) {
+		return store.getFragile(handle) && store.getWrapping(handle) != MailItem.WRAPPED;
+	}
+
+	private static boolean needsWrapping(MailItem mailItem) {
+		return mailItem.getFragile() && mailItem.getWrapping() != MailItem.WRAPPED;
+	}
+}
@@ -0,0 +1,115 @@
+package strategies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import automail.Building;
+import automail.Clock;
+import automail.IMetricsSink;
+import automail.ITraceSink;
+import automail.MailItem;
+import automail.PrintTraceSink;
+import automail.Robot;
+import automail.SimulationContext;
+
+/**
+ * Hammers a {@link ConcurrentMailPool} with many producer threads adding mail at once while the dispatcher
+ * thread keeps draining it, then checks that every item ended up in the pool exactly once, and that each
+ * producer's items to a floor kept the order they were added in.
+ *
+ * Small by default so it runs with every build; for a heavier run:
+ * mvn -pl P1_Automail test -Dtest=ConcurrentMailPoolTest -Dstress.producers=8 -Dstress.items=200000 -Dstress.rounds=5
+ */
+class ConcurrentMailPoolTest {
+
+    private static final int PRODUCERS = Integer.getInteger("stress.producers", 4);
+    private static final int ITEMS = Integer.getInteger("stress.items", 20_000);
+    private static final int FLOORS = Integer.getInteger("stress.floors", 12);
+    private static final int ROUNDS = Integer.getInteger("stress.rounds", 3);
+
+    @Test
+    void concurrentProducersLoseDuplicateAndReorderNothing() throws Exception {
+        for (int round = 1; round <= ROUNDS; round++) {
+            run(round);
+        }
+    }
+
+    private void run(int round) throws Exception {
+        SimulationContext context = new SimulationContext(new Building(FLOORS), new Clock(Integer.MAX_VALUE),
+                new PrintTraceSink(ITraceSink.Level.OFF, System.out), IMetricsSink.NONE, 0, 0);
+        ConcurrentMailPool pool = new ConcurrentMailPool(1, context);
+        // Producer p adds items with ids p * ITEMS to (p + 1) * ITEMS - 1, in order of id
+        MailItem[][] mail = new MailItem[PRODUCERS][];
+        for (int p = 0; p < PRODUCERS; p++) {
+            mail[p] = mail(p * ITEMS, new Random(round * 1000 + p));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+        Thread[] threads = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            MailItem[] own = mail[p];
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (MailItem mailItem : own) {
+                    pool.addToPool(mailItem);
+                }
+                done.countDown();
+            });
+            threads[p].start();
+        }
+
+        // The dispatcher drains while the producers are still adding, then once more after the last has finished
+        start.countDown();
+        while (done.getCount() > 0) {
+            pool.step();
+        }
+        pool.step();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<MailItem> pooled = pool.getPooledMail();
+        int total = PRODUCERS * ITEMS;
+        BitSet seen = new BitSet(total);
+        int duplicated = 0;
+        int outOfOrder = 0;
+        // The last id seen from each producer to each floor
+        int[][] last = new int[PRODUCERS][FLOORS + 1];
+        for (int[] row : last) Arrays.fill(row, -1);
+        for (MailItem mailItem : pooled) {
+            int id = mailItem.getId();
+            if (seen.get(id)) duplicated++;
+            seen.set(id);
+            int producer = id / ITEMS;
+            if (id < last[producer][mailItem.getDestFloor()]) outOfOrder++;
+            last[producer][mailItem.getDestFloor()] = id;
+        }
+        assertEquals(total, pooled.size(), "items pooled in round " + round);
+        assertEquals(0, total - seen.cardinality(), "items lost in round " + round);
+        assertEquals(0, duplicated, "items duplicated in round " + round);
+        assertEquals(0, outOfOrder, "items out of order in round " + round);
+    }
+
+    private static MailItem[] mail(int firstId, Random random) {
+        MailItem[] mail = new MailItem[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            int floor = Building.LOWEST_FLOOR + random.nextInt(FLOORS);
+            int weight = 200 + random.nextInt(Robot.INDIVIDUAL_MAX_WEIGHT - 200);
+            mail[i] = new MailItem(firstId + i, floor, 0, weight, random.nextDouble() < 0.25);
+        }
+        return mail;
+    }
+}
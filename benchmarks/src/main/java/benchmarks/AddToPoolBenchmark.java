@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.MailItem;
+import automail.SimulationContext;
+import strategies.IMailPool;
+
+/**
+ * Filling an empty pool with a day's mail, one addToPool at a time
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddToPoolBenchmark {
+
+    @Param({"strategies.MailPool", "strategies.FloorMailPool", "strategies.BatchMailPool", "strategies.BulkMailPool"})
+    public String pool;
+
+    @Param({"12", "100"})
+    public int floors;
+
+    @Param({"1000", "10000"})
+    public int mail;
+
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private SimulationContext context;
+    private MailItem[] items;
+
+    @Setup
+    public void setUp() {
+        context = Fixtures.context(floors);
+        items = Fixtures.mail(mail, 0, floors, fragileRatio, new Random(30006));
+    }
+
+    @Benchmark
+    public IMailPool addToPool() throws ReflectiveOperationException {
+        IMailPool mailPool = Fixtures.pool(pool, 1, context);
+        for (MailItem mailItem : items) {
+            mailPool.addToPool(mailItem);
+        }
+        return mailPool;
+    }
+}
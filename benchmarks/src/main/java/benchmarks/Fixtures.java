@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.util.Random;
+
+import automail.Building;
+import automail.Clock;
+import automail.IMailDelivery;
+import automail.IMetricsSink;
+import automail.ITraceSink;
+import automail.MailItem;
+import automail.PrintTraceSink;
+import automail.Robot;
+import automail.SimulationContext;
+import strategies.IMailPool;
+
+/**
+ * Builds the pieces of a simulation the benchmarks work on, with tracing switched off
+ */
+final class Fixtures {
+
+    /** Accepts every delivery without recording anything */
+    static final IMailDelivery NO_DELIVERY = mailItem -> { };
+
+    private Fixtures() {
+    }
+
+    static SimulationContext context(int floors) {
+        return new SimulationContext(new Building(floors), new Clock(Integer.MAX_VALUE),
+                new PrintTraceSink(ITraceSink.Level.OFF, System.out), IMetricsSink.NONE, 0, 0);
+    }
+
+    static IMailPool pool(String className, int robots, SimulationContext context) throws ReflectiveOperationException {
+        return (IMailPool) Class.forName(className).getConstructor(int.class, SimulationContext.class)
+                .newInstance(robots, context);
+    }
+
+    /**
+     * @param firstId the id of the first item, the rest follow on
+     * @param fragileRatio the chance of each item being fragile
+     */
+    static MailItem[] mail(int count, int firstId, int floors, double fragileRatio, Random random) {
+        MailItem[] mail = new MailItem[count];
+        for (int i = 0; i < count; i++) {
+            int floor = Building.LOWEST_FLOOR + random.nextInt(floors);
+            int weight = 200 + random.nextInt(Robot.INDIVIDUAL_MAX_WEIGHT - 200);
+            mail[i] = new MailItem(firstId + i, floor, 0, weight, random.nextDouble() < fragileRatio);
+        }
+        return mail;
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.MailItem;
+import automail.SimulationContext;
+import automail.SpecialRobot;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+/**
+ * One MailPool.step handing out mail from a full pool to every robot waiting in the mailroom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadRobotBenchmark {
+
+    @Param({"strategies.MailPool", "strategies.FloorMailPool", "strategies.BatchMailPool", "strategies.BulkMailPool",
+            "strategies.ConcurrentMailPool"})
+    public String pool;
+
+    @Param({"12", "100"})
+    public int floors;
+
+    @Param({"3", "30"})
+    public int robots;
+
+    @Param({"1000", "10000"})
+    public int mail;
+
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private MailItem[] items;
+    private IMailPool mailPool;
+
+    @Setup(Level.Trial)
+    public void createMail() {
+        items = Fixtures.mail(mail, 0, floors, fragileRatio, new Random(30006));
+    }
+
+    /** The pool is emptied by each step, so it is refilled and the robots replaced before every one */
+    @Setup(Level.Invocation)
+    public void fillPool() throws ReflectiveOperationException {
+        SimulationContext context = Fixtures.context(floors);
+        mailPool = Fixtures.pool(pool, robots, context);
+        for (MailItem mailItem : items) {
+            mailPool.addToPool(mailItem);
+        }
+        for (int i = 0; i < robots; i++) {
+            mailPool.registerWaiting(new SpecialRobot(Fixtures.NO_DELIVERY, mailPool, context));
+        }
+    }
+
+    @Benchmark
+    public IMailPool step() throws ItemTooHeavyException, BreakingFragileItemException {
+        mailPool.step();
+        return mailPool;
+    }
+}
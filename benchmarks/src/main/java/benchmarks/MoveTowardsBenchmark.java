@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Building;
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.SimulationContext;
+import automail.SpecialRobot;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+/**
+ * Every robot of a caution fleet moving one floor, including the checks for robots delivering fragile
+ * mail on the floor it is moving to. Some of the fleet carries only a fragile item.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveTowardsBenchmark {
+
+    /** Exposes the move a robot makes in a step */
+    static class MovingRobot extends SpecialRobot {
+        MovingRobot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context) {
+            super(delivery, mailPool, context);
+        }
+
+        void move() {
+            moveTowards(getDestination_floor());
+        }
+    }
+
+    @Param({"12", "100"})
+    public int floors;
+
+    @Param({"3", "30", "300"})
+    public int robots;
+
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private MovingRobot[] fleet;
+    private Random random;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException, ItemTooHeavyException {
+        SimulationContext context = Fixtures.context(floors);
+        IMailPool mailPool = Fixtures.pool("strategies.FloorMailPool", robots, context);
+        random = new Random(30006);
+        fleet = new MovingRobot[robots];
+        for (int i = 0; i < robots; i++) {
+            fleet[i] = new MovingRobot(Fixtures.NO_DELIVERY, mailPool, context);
+            fleet[i].setCurrent_floor(randomFloor());
+            fleet[i].setDestination_floor(randomFloor());
+            if (random.nextDouble() < fragileRatio) {
+                fleet[i].addToSpecialHands(new MailItem(i, fleet[i].getDestination_floor(), 0, 500, true));
+            }
+        }
+        context.robotManager.addRobots(fleet);
+    }
+
+    private int randomFloor() {
+        return Building.LOWEST_FLOOR + random.nextInt(floors);
+    }
+
+    @Benchmark
+    public MovingRobot[] moveTowards() {
+        for (MovingRobot robot : fleet) {
+            if (robot.getCurrent_floor() == robot.getDestination_floor()) {
+                robot.setDestination_floor(randomFloor());
+            } else {
+                robot.move();
+            }
+        }
+        return fleet;
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import automail.SpecialRobot;
+import strategies.IMailPool;
+
+/**
+ * One time step of a whole fleet: the pool loads waiting robots and every robot steps. The pool is
+ * topped up so that the robots always have mail to deliver.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotStepBenchmark {
+
+    @Param({"12", "100"})
+    public int floors;
+
+    @Param({"3", "30", "300"})
+    public int robots;
+
+    /** With no fragile mail the robots are plain robots, otherwise they are caution robots */
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private SimulationContext context;
+    private IMailPool mailPool;
+    private Robot[] fleet;
+    private Random random;
+    private int created;
+    private int delivered;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        context = Fixtures.context(floors);
+        mailPool = Fixtures.pool("strategies.FloorMailPool", robots, context);
+        fleet = new Robot[robots];
+        for (int i = 0; i < robots; i++) {
+            fleet[i] = fragileRatio > 0 ? new SpecialRobot(mailItem -> delivered++, mailPool, context)
+                    : new Robot(mailItem -> delivered++, mailPool, context);
+        }
+        context.robotManager.addRobots(fleet);
+        random = new Random(30006);
+    }
+
+    @Benchmark
+    public int step() throws Throwable {
+        if (created - delivered < robots * 2) {
+            for (MailItem mailItem : Fixtures.mail(robots * 2, created, floors, fragileRatio, random)) {
+                mailPool.addToPool(mailItem);
+            }
+            created += robots * 2;
+        }
+        mailPool.step();
+        for (Robot robot : fleet) {
+            robot.step();
+        }
+        context.clock.Tick();
+        return delivered;
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.ITraceSink;
+import automail.PrintTraceSink;
+import automail.Simulation;
+
+/**
+ * A whole simulation run from a fixed seed with tracing off. The generator makes one item in four
+ * fragile when fragile mail is on.
+ *
+ * Every combination of parameters must run to completion: with seed 30006, thirty robots and fragile
+ * mail on twelve floors never finish, as the robots keep returning without the last items being loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationBenchmark {
+
+    @Param({"strategies.MailPool", "strategies.FloorMailPool", "strategies.BatchMailPool", "strategies.BulkMailPool",
+            "strategies.ConcurrentMailPool"})
+    public String pool;
+
+    @Param({"tick", "event"})
+    public String engine;
+
+    @Param({"20", "100"})
+    public int floors;
+
+    @Param({"3", "30"})
+    public int robots;
+
+    @Param({"200", "2000"})
+    public int mail;
+
+    @Param({"false", "true"})
+    public boolean fragile;
+
+    private Properties properties;
+
+    @Setup
+    public void setUp() {
+        properties = new Properties();
+        properties.setProperty("Seed", "30006");
+        properties.setProperty("Floors", Integer.toString(floors));
+        properties.setProperty("Robots", Integer.toString(robots));
+        properties.setProperty("Mail_to_Create", Integer.toString(mail));
+        properties.setProperty("Mail_Max_Weight", "2000");
+        properties.setProperty("Last_Delivery_Time", Integer.toString(Math.max(100, mail / 2)));
+        properties.setProperty("Caution", "true");
+        properties.setProperty("Fragile", Boolean.toString(fragile));
+        properties.setProperty("Statistics", "false");
+        properties.setProperty("Engine", engine);
+        properties.setProperty("Generator", "eager");
+        properties.setProperty("MailPool", pool);
+    }
+
+    @Benchmark
+    public double run() throws Throwable {
+        Simulation simulation = new Simulation(properties, new PrintTraceSink(ITraceSink.Level.OFF, System.out));
+        try {
+            simulation.run();
+        } finally {
+            simulation.close();
+        }
+        return simulation.getTotalScore();
+    }
+}